@@ -4,18 +4,28 @@ import de.sofd.draw2d.event.ChangeRejectedException;
 
 import java.awt.Color;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EventObject;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import de.sofd.draw2d.event.DrawingEvent;
 import de.sofd.draw2d.event.DrawingListener;
 import de.sofd.draw2d.event.DrawingObjectAddOrMoveEvent;
+import de.sofd.draw2d.event.DrawingObjectBulkChangeEvent;
 import de.sofd.draw2d.event.DrawingObjectEvent;
 import de.sofd.draw2d.event.DrawingObjectListener;
+import de.sofd.draw2d.event.DrawingObjectLocationChangeEvent;
 import de.sofd.draw2d.event.DrawingObjectRemoveEvent;
+import de.sofd.draw2d.event.PostChangeListener;
 import de.sofd.draw2d.viewer.DrawingViewer;
 import de.sofd.util.Misc;
 import java.io.IOException;
@@ -31,10 +41,32 @@ import java.io.Serializable;
  * set of event listeners (see {@link #addDrawingListener(DrawingListener)} and
  * friends). (so users will only have to add one listener to the drawing instead
  * of also adding/removing listener to/from all the drawing's objects as they're
- * added/removed).
+ * added/removed). Listeners that are only interested in some kinds of events
+ * can subscribe to just those (see
+ * {@link #addDrawingListener(Class, DrawingListener)}); each event is only
+ * delivered to the listeners whose event class it is an instance of.
  * <p>
  * For painting or displaying a drawing and for providing a means for the end
  * user to interactively modify the drawing, use a {@link DrawingViewer}.
+ * <p>
+ * The drawing maintains a spatial index over the bounding boxes (
+ * {@link DrawingObject#getBounds2D()}) of its objects, which is kept up to date
+ * using the objects' {@link DrawingObjectLocationChangeEvent}s. Hit-testing
+ * queries like {@link #getDrawingObjectsAt(Point2D)} use it to only look at
+ * objects whose bounding box contains the queried point, and region queries
+ * like {@link #getDrawingObjectsIntersecting(Rectangle2D)} only look at
+ * objects whose bounding box overlaps the queried rectangle, so their cost
+ * depends on the number of objects found rather than on the size of the
+ * drawing. This assumes that
+ * {@link DrawingObject#contains(Point2D)} is never true for points outside
+ * the object's bounding box, and that all changes to an object's bounding box
+ * are signaled by location change events (see
+ * {@link DrawingObject#setLocation(Location)}).
+ * <p>
+ * Many changes to the drawing's objects can be grouped into a batch (see
+ * {@link #runInTransaction(Runnable)}, {@link #beginBatch()} /
+ * {@link #endBatch()}), during which the objects' post-change events are
+ * collected and merged rather than delivered immediately.
  * 
  * @author olaf
  */
@@ -42,10 +74,21 @@ public class Drawing implements Serializable {
 
     private static final long serialVersionUID = -2815369104571946712L;
 
-    // TODO: a LinkedIdentityHashSet would be better here (as soon as we've implemented it)
-    private final List<DrawingObject> drawingObjects = new ArrayList<DrawingObject>();
+    /**
+     * The objects in z order. Identity-indexed, so membership and index
+     * lookups as well as adding, removing or moving a single object don't
+     * depend linearly on the size of the drawing.
+     */
+    private /*final*/ List<DrawingObject> drawingObjects =
+        new IndexedIdentityList<DrawingObject>();  // field can't be final because of deserialization
 
     private final Map<String, Object> tags = new HashMap<String, Object>();
+
+    /**
+     * Spatial index of all drawingObjects by their bounding boxes.
+     */
+    private /*final*/ transient RTree<DrawingObject> spatialIndex =
+        new RTree<DrawingObject>();  // field can't be final because of deserialization
     
     /**
      * Add o to this drawing at position index in the z order. If o was already
@@ -67,6 +110,7 @@ public class Drawing implements Serializable {
         } else if (oldIndex != index) {
             if (fireEvent(DrawingObjectAddOrMoveEvent.newBeforeObjectAddEvent(this, index))) {
                 drawingObjects.add(index, o);
+                spatialIndex.put(o, o.getBounds2D());
                 o.addDrawingObjectListener(drawingObjectEventForwarder);
                 fireEvent(DrawingObjectAddOrMoveEvent.newAfterObjectAddEvent(this, index));
             }
@@ -119,6 +163,7 @@ public class Drawing implements Serializable {
         DrawingObject o = get(index);
         if (fireEvent(DrawingObjectRemoveEvent.newBeforeObjectRemoveEvent(this, index))) {
             DrawingObject removedObject = drawingObjects.remove(index);
+            spatialIndex.remove(removedObject);
             o.removeDrawingObjectListener(drawingObjectEventForwarder);
             fireEvent(DrawingObjectRemoveEvent.newAfterObjectRemoveEvent(this, index, removedObject));
         }
@@ -150,23 +195,130 @@ public class Drawing implements Serializable {
         result.addAll(drawingObjects);
         return result;
     }
+
+    private transient List<DrawingObject> objectsView;
+
+    /**
+     * Read-only alternative to {@link #getObjects()} that doesn't copy
+     * anything.
+     * 
+     * @return unmodifiable live view of all DrawingObjects in this drawing, in
+     *         reverse z order (backmost object first). Reflects subsequent
+     *         changes to the drawing; iterating over it while objects are
+     *         added to or removed from the drawing throws a
+     *         {@link java.util.ConcurrentModificationException}.
+     */
+    public List<DrawingObject> getObjectsView() {
+        if (null == objectsView) {
+            objectsView = Collections.unmodifiableList(drawingObjects);
+        }
+        return objectsView;
+    }
     
     /**
      * Completely replace this Drawing's list of DrawingObjects with the
      * supplied ones. Mainly needed for XML beans serialization, but can be used
      * for any purpose.
+     * <p>
+     * Fires a single pair of {@link DrawingObjectBulkChangeEvent}s, with all
+     * the old objects as the removed ones and all the objects in objs as the
+     * added ones.
      * 
      * @param objs
      */
     public void setObjects(List<DrawingObject> objs) {
-        // do this properly, including firing of DrawingObjectRemoveEvents for
-        // the old objects and DrawingObjectAddEvents for the new ones
-        while (getObjectCount() > 0) {
-            removeDrawingObject(0);
+        List<DrawingObject> removed = getObjects();
+        List<DrawingObject> added = withoutDuplicates(objs);
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+        if (fireEvent(DrawingObjectBulkChangeEvent.newBeforeChangeEvent(this, removed, added))) {
+            for (DrawingObject o : removed) {
+                o.removeDrawingObjectListener(drawingObjectEventForwarder);
+            }
+            drawingObjects.clear();
+            spatialIndex.clear();
+            for (DrawingObject o : added) {
+                drawingObjects.add(o);
+                spatialIndex.put(o, o.getBounds2D());
+                o.addDrawingObjectListener(drawingObjectEventForwarder);
+            }
+            fireEvent(DrawingObjectBulkChangeEvent.newAfterChangeEvent(this, removed, added));
+        }
+    }
+
+    /**
+     * Add all objects in objs to the top of the z order, in the iteration order
+     * of objs. Objects that are already part of this drawing are left alone
+     * (unlike with {@link #addDrawingObject(DrawingObject)}, they're not moved
+     * to the top). Fires a single pair of {@link DrawingObjectBulkChangeEvent}s
+     * rather than one pair of {@link DrawingObjectAddOrMoveEvent}s per object.
+     * 
+     * @param objs
+     *            objs
+     */
+    public void addDrawingObjects(Collection<? extends DrawingObject> objs) {
+        List<DrawingObject> added = new ArrayList<DrawingObject>(objs.size());
+        for (DrawingObject o : withoutDuplicates(objs)) {
+            if (!drawingObjects.contains(o)) {
+                added.add(o);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        List<DrawingObject> removed = Collections.emptyList();
+        if (fireEvent(DrawingObjectBulkChangeEvent.newBeforeChangeEvent(this, removed, added))) {
+            for (DrawingObject o : added) {
+                drawingObjects.add(o);
+                spatialIndex.put(o, o.getBounds2D());
+                o.addDrawingObjectListener(drawingObjectEventForwarder);
+            }
+            fireEvent(DrawingObjectBulkChangeEvent.newAfterChangeEvent(this, removed, added));
+        }
+    }
+
+    /**
+     * Remove all objects in objs from this drawing. Objects that aren't part of
+     * this drawing are ignored. Fires a single pair of
+     * {@link DrawingObjectBulkChangeEvent}s rather than one pair of
+     * {@link DrawingObjectRemoveEvent}s per object.
+     * 
+     * @param objs
+     *            objs
+     */
+    public void removeDrawingObjects(Collection<? extends DrawingObject> objs) {
+        List<DrawingObject> removed = new ArrayList<DrawingObject>(objs.size());
+        for (DrawingObject o : withoutDuplicates(objs)) {
+            if (drawingObjects.contains(o)) {
+                removed.add(o);
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+        sortTopmostFirst(removed);
+        Collections.reverse(removed);
+        List<DrawingObject> added = Collections.emptyList();
+        if (fireEvent(DrawingObjectBulkChangeEvent.newBeforeChangeEvent(this, removed, added))) {
+            for (DrawingObject o : removed) {
+                drawingObjects.remove(o);
+                spatialIndex.remove(o);
+                o.removeDrawingObjectListener(drawingObjectEventForwarder);
+            }
+            fireEvent(DrawingObjectBulkChangeEvent.newAfterChangeEvent(this, removed, added));
         }
+    }
+
+    private static List<DrawingObject> withoutDuplicates(Collection<? extends DrawingObject> objs) {
+        Map<DrawingObject, Boolean> seen = new IdentityHashMap<DrawingObject, Boolean>(objs.size());
+        List<DrawingObject> result = new ArrayList<DrawingObject>(objs.size());
         for (DrawingObject o : objs) {
-            addDrawingObject(o);
+            if (null == seen.put(o, Boolean.TRUE)) {
+                result.add(o);
+            }
         }
+        return result;
     }
 
     /**
@@ -178,13 +330,13 @@ public class Drawing implements Serializable {
      */
     public List<DrawingObject> getDrawingObjectsAt(Point2D pt) {
         List<DrawingObject> result = new ArrayList<DrawingObject>();
-        int count = drawingObjects.size();
-        for (int i = count-1; i >=0; i--) {
-            DrawingObject drobj = drawingObjects.get(i);
-            if (drobj.contains(pt)) {
-                result.add(drobj);
+        spatialIndex.search(pt.getX(), pt.getY(), pt.getX(), pt.getY(), result);
+        for (Iterator<DrawingObject> it = result.iterator(); it.hasNext();) {
+            if (!it.next().contains(pt)) {
+                it.remove();
             }
         }
+        sortTopmostFirst(result);
         return result;
     }
 
@@ -196,10 +348,10 @@ public class Drawing implements Serializable {
      *         DrawingObject there.
      */
     public DrawingObject getTopmostDrawingObjectAt(Point2D pt) {
-        List<DrawingObject> result = new ArrayList<DrawingObject>();
-        int count = drawingObjects.size();
-        for (int i = count-1; i >=0; i--) {
-            DrawingObject drobj = drawingObjects.get(i);
+        List<DrawingObject> candidates = new ArrayList<DrawingObject>();
+        spatialIndex.search(pt.getX(), pt.getY(), pt.getX(), pt.getY(), candidates);
+        sortTopmostFirst(candidates);
+        for (DrawingObject drobj : candidates) {
             if (drobj.contains(pt)) {
                 return drobj;
             }
@@ -207,6 +359,68 @@ public class Drawing implements Serializable {
         return null;
     }
 
+    /**
+     * 
+     * @param rect
+     *            rect
+     * @return list of all DrawingObjects whose bounding box (
+     *         {@link DrawingObject#getBounds2D()}) intersects or touches rect,
+     *         in z order (topmost object first)
+     */
+    public List<DrawingObject> getDrawingObjectsIntersecting(Rectangle2D rect) {
+        List<DrawingObject> result = new ArrayList<DrawingObject>();
+        spatialIndex.search(rect, result);
+        sortTopmostFirst(result);
+        return result;
+    }
+
+    /**
+     * 
+     * @param rect
+     *            rect
+     * @return list of all DrawingObjects whose bounding box (
+     *         {@link DrawingObject#getBounds2D()}) lies completely inside rect
+     *         (edges included), in z order (topmost object first)
+     */
+    public List<DrawingObject> getDrawingObjectsInside(Rectangle2D rect) {
+        List<DrawingObject> result = new ArrayList<DrawingObject>();
+        spatialIndex.search(rect, result);
+        for (Iterator<DrawingObject> it = result.iterator(); it.hasNext();) {
+            Rectangle2D bounds = it.next().getBounds2D();
+            if (bounds.getMinX() < rect.getMinX() || bounds.getMaxX() > rect.getMaxX() ||
+                    bounds.getMinY() < rect.getMinY() || bounds.getMaxY() > rect.getMaxY()) {
+                it.remove();
+            }
+        }
+        sortTopmostFirst(result);
+        return result;
+    }
+
+    /**
+     * Sort objs, which must all be part of this drawing, by z order (topmost
+     * object first).
+     */
+    private void sortTopmostFirst(List<DrawingObject> objs) {
+        int n = objs.size();
+        if (n < 2) {
+            return;
+        }
+        // sort keys: z index (descending) in the upper 32 bits, original position
+        // in objs in the lower ones
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = ((long) (Integer.MAX_VALUE - drawingObjects.indexOf(objs.get(i))) << 32) | i;
+        }
+        Arrays.sort(keys);
+        DrawingObject[] sorted = new DrawingObject[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = objs.get((int) keys[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            objs.set(i, sorted[i]);
+        }
+    }
+
     public void setTag(String name, Object value) {
         tags.put(name, value);
     }
@@ -245,14 +459,92 @@ public class Drawing implements Serializable {
         }
     }
     
-    private /*final*/ transient List<DrawingListener> drawingListeners =
-        new ArrayList<DrawingListener>();  // field can't be final because of deserialization
+    private /*final*/ transient volatile ListenerTable drawingListeners =
+        ListenerTable.EMPTY;  // field can't be final because of deserialization
+
+    /**
+     * The registered listeners with the event classes they subscribed to, in
+     * registration order, plus the dispatch tables: for each concrete event
+     * class fired so far, the listeners that receive its post-change and its
+     * pre-change events (the latter without the {@link PostChangeListener}s).
+     * Immutable except for the lazily filled dispatch tables; adding or removing a listener
+     * replaces the whole ListenerTable, so firing needs no copying or
+     * locking and listeners may add or remove listeners while an event is
+     * being fired.
+     */
+    private static class ListenerTable {
+        static final ListenerTable EMPTY =
+            new ListenerTable(new DrawingListener[0], new Class<?>[0]);
+
+        final DrawingListener[] listeners;
+        final Class<?>[] eventClasses;
+        private final Map<Class<?>, DrawingListener[]> dispatchTable =
+            new ConcurrentHashMap<Class<?>, DrawingListener[]>();
+        private final Map<Class<?>, DrawingListener[]> beforeChangeDispatchTable =
+            new ConcurrentHashMap<Class<?>, DrawingListener[]>();
+
+        ListenerTable(DrawingListener[] listeners, Class<?>[] eventClasses) {
+            this.listeners = listeners;
+            this.eventClasses = eventClasses;
+        }
+
+        DrawingListener[] getListenersFor(Class<?> eventClass, boolean beforeChange) {
+            Map<Class<?>, DrawingListener[]> table = (beforeChange ? beforeChangeDispatchTable : dispatchTable);
+            DrawingListener[] result = table.get(eventClass);
+            if (null == result) {
+                List<DrawingListener> matching = new ArrayList<DrawingListener>(listeners.length);
+                for (int i = 0; i < listeners.length; i++) {
+                    if (eventClasses[i].isAssignableFrom(eventClass) &&
+                            !(beforeChange && listeners[i] instanceof PostChangeListener)) {
+                        matching.add(listeners[i]);
+                    }
+                }
+                result = matching.toArray(new DrawingListener[matching.size()]);
+                table.put(eventClass, result);
+            }
+            return result;
+        }
+
+        ListenerTable with(Class<?> eventClass, DrawingListener l) {
+            DrawingListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+            Class<?>[] newEventClasses = Arrays.copyOf(eventClasses, eventClasses.length + 1);
+            newListeners[listeners.length] = l;
+            newEventClasses[eventClasses.length] = eventClass;
+            return new ListenerTable(newListeners, newEventClasses);
+        }
+
+        /**
+         * @param eventClass
+         *            null to remove all registrations of l
+         */
+        ListenerTable without(Class<?> eventClass, DrawingListener l) {
+            List<DrawingListener> newListeners = new ArrayList<DrawingListener>(listeners.length);
+            List<Class<?>> newEventClasses = new ArrayList<Class<?>>(listeners.length);
+            boolean removed = false;
+            for (int i = 0; i < listeners.length; i++) {
+                boolean matches = (listeners[i] == null ? l == null : listeners[i].equals(l)) &&
+                                  (null == eventClass ? true : eventClasses[i] == eventClass);
+                if (matches && !(removed && null != eventClass)) {
+                    removed = true;
+                } else {
+                    newListeners.add(listeners[i]);
+                    newEventClasses.add(eventClasses[i]);
+                }
+            }
+            if (!removed) {
+                return this;
+            }
+            return new ListenerTable(newListeners.toArray(new DrawingListener[newListeners.size()]),
+                                     newEventClasses.toArray(new Class<?>[newEventClasses.size()]));
+        }
+    }
 
     private final DrawingObjectEventForwarderClass drawingObjectEventForwarder =
             new DrawingObjectEventForwarderClass();
 
     // need to define non-anonymous class for this to facilitate serialization
-    private class DrawingObjectEventForwarderClass implements DrawingObjectListener, Serializable {
+    // (package-private so DrawingObject can ask it whether pre-change events are needed)
+    class DrawingObjectEventForwarderClass implements DrawingObjectListener, Serializable {
         /**
          * 
          */
@@ -260,18 +552,209 @@ public class Drawing implements Serializable {
 
         @Override
         public void onDrawingObjectEvent(DrawingObjectEvent e) {
+            if (e instanceof DrawingObjectLocationChangeEvent && ((DrawingObjectLocationChangeEvent) e).isAfterChange()) {
+                // update the index before anyone else hears about the change
+                DrawingObject drobj = e.getSource();
+                spatialIndex.put(drobj, drobj.getBounds2D());
+            }
+            if (batchDepth > 0 && e.isAfterChange()) {
+                deferEvent(e);
+                return;
+            }
             if (!Drawing.this.fireEvent(e)) {
                 throw ChangeRejectedException.getLastException();
             }
         }
+
+        /**
+         * 
+         * @return whether the drawing has listeners for pre-change events of
+         *         class eventClass
+         */
+        boolean hasBeforeChangeListeners(Class<? extends DrawingObjectEvent> eventClass) {
+            return Drawing.this.hasBeforeChangeListeners(eventClass);
+        }
     };
     
+    // batches
+
+    private transient int batchDepth = 0;
+    /**
+     * post-change DrawingObjectEvents collected during the current batch, in
+     * the order in which they occured. null if there are none.
+     */
+    private transient List<DrawingObjectEvent> pendingEvents;
+    /**
+     * position in pendingEvents of the (merged) location change event and the
+     * generic "something changed" DrawingObjectEvent, respectively, of each object
+     */
+    private transient Map<DrawingObject, Integer> pendingLocationEventIndices, pendingGenericEventIndices;
+
+    /**
+     * Start a batch of changes. Until the matching {@link #endBatch()} call,
+     * post-change {@link DrawingObjectEvent}s of the drawing's objects aren't
+     * delivered to this drawing's listeners immediately; they're collected and
+     * delivered in order when the batch ends. While collected, they're merged
+     * per object: Consecutive plain {@link DrawingObjectLocationChangeEvent}s of
+     * an object are merged into one going from the oldest old location to the
+     * newest new location, and repeated generic (plain {@link DrawingObjectEvent}) change
+     * notifications are merged into one. Other post-change events are delivered
+     * unmerged.
+     * <p>
+     * Pre-change events are still delivered immediately, so listeners can
+     * still reject changes by throwing {@link ChangeRejectedException}s, as
+     * usual. The events this drawing fires itself when objects are added,
+     * removed or moved in the z order aren't affected by batches either.
+     * Collected events of objects that aren't part of the drawing anymore when
+     * the batch ends are dropped.
+     * <p>
+     * Batches may be nested; only the end of the outermost batch delivers the
+     * collected events.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * End a batch of changes started by {@link #beginBatch()}.
+     * 
+     * @throws IllegalStateException
+     *             if no batch was active
+     */
+    public void endBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("endBatch() called without a preceding beginBatch()");
+        }
+        if (--batchDepth == 0) {
+            deliverPendingEvents();
+        }
+    }
+
+    public boolean isInBatch() {
+        return batchDepth > 0;
+    }
+
+    /**
+     * Run r inside a batch (see {@link #beginBatch()}).
+     * 
+     * @param r
+     *            r
+     */
+    public void runInTransaction(Runnable r) {
+        beginBatch();
+        try {
+            r.run();
+        } finally {
+            endBatch();
+        }
+    }
+
+    private void deferEvent(DrawingObjectEvent e) {
+        if (null == pendingEvents) {
+            pendingEvents = new ArrayList<DrawingObjectEvent>();
+            pendingLocationEventIndices = new IdentityHashMap<DrawingObject, Integer>();
+            pendingGenericEventIndices = new IdentityHashMap<DrawingObject, Integer>();
+        }
+        DrawingObject drobj = e.getSource();
+        if (e.getClass() == DrawingObjectLocationChangeEvent.class) {
+            DrawingObjectLocationChangeEvent lce = (DrawingObjectLocationChangeEvent) e;
+            Integer index = pendingLocationEventIndices.get(drobj);
+            if (null == index) {
+                pendingLocationEventIndices.put(drobj, pendingEvents.size());
+                pendingEvents.add(new DrawingObjectLocationChangeEvent(drobj, false,
+                                                                       new Location(lce.getLastLocation()),
+                                                                       new Location(lce.getNewLocation())));
+            } else {
+                DrawingObjectLocationChangeEvent pending = (DrawingObjectLocationChangeEvent) pendingEvents.get(index);
+                pendingEvents.set(index, new DrawingObjectLocationChangeEvent(drobj, false,
+                                                                              pending.getLastLocation(),
+                                                                              new Location(lce.getNewLocation())));
+            }
+        } else if (e.getClass() == DrawingObjectEvent.class) {
+            if (!pendingGenericEventIndices.containsKey(drobj)) {
+                pendingGenericEventIndices.put(drobj, pendingEvents.size());
+                pendingEvents.add(e);
+            }
+        } else {
+            if (e instanceof DrawingObjectLocationChangeEvent) {
+                // more specific event that changes the location too (e.g. a
+                // PolygonPointAddEvent). Can't be merged; later location
+                // changes must come after it.
+                pendingLocationEventIndices.remove(drobj);
+            }
+            pendingEvents.add(e);
+        }
+    }
+
+    private void deliverPendingEvents() {
+        if (null == pendingEvents) {
+            return;
+        }
+        List<DrawingObjectEvent> events = pendingEvents;
+        pendingEvents = null;
+        pendingLocationEventIndices = null;
+        pendingGenericEventIndices = null;
+        for (DrawingObjectEvent e : events) {
+            if (drawingObjects.contains(e.getSource())) {
+                fireEvent(e);
+            }
+        }
+    }
+
+    /**
+     * Add a listener for all events of this drawing. Same as
+     * addDrawingListener(EventObject.class, l).
+     * 
+     * @param l
+     *            l
+     */
     public void addDrawingListener(DrawingListener l) {
-        drawingListeners.add(l);
+        addDrawingListener(EventObject.class, l);
     }
-    
-    public void removeDrawingListener(DrawingListener l) {
-        drawingListeners.remove(l);
+
+    /**
+     * Add a listener for a specific kind of events of this drawing. l will
+     * only receive events that are instances of eventClass (e.g.
+     * {@link DrawingObjectLocationChangeEvent}.class for all location changes
+     * of the drawing's objects, or {@link DrawingEvent}.class for all
+     * structural changes of the drawing itself). A listener may be added
+     * several times with different event classes, but an event that matches
+     * several of those is then delivered to it several times.
+     * 
+     * @param eventClass
+     *            eventClass
+     * @param l
+     *            l
+     */
+    public synchronized void addDrawingListener(Class<? extends EventObject> eventClass, DrawingListener l) {
+        if (null == eventClass) {
+            throw new IllegalArgumentException("null event class");
+        }
+        drawingListeners = drawingListeners.with(eventClass, l);
+    }
+
+    /**
+     * Remove a listener, including all its registrations for specific event
+     * classes.
+     * 
+     * @param l
+     *            l
+     */
+    public synchronized void removeDrawingListener(DrawingListener l) {
+        drawingListeners = drawingListeners.without(null, l);
+    }
+
+    /**
+     * Remove a listener's registration for a specific event class (see
+     * {@link #addDrawingListener(Class, DrawingListener)}).
+     * 
+     * @param eventClass
+     *            eventClass
+     * @param l
+     *            l
+     */
+    public synchronized void removeDrawingListener(Class<? extends EventObject> eventClass, DrawingListener l) {
+        drawingListeners = drawingListeners.without(eventClass, l);
     }
     
     /**
@@ -286,7 +769,7 @@ public class Drawing implements Serializable {
      */
     protected boolean fireEvent(EventObject e) {
         try {
-            for (DrawingListener l : drawingListeners) {
+            for (DrawingListener l : drawingListeners.getListenersFor(e.getClass(), isBeforeChange(e))) {
                 l.onDrawingEvent(e);
             }
             ChangeRejectedException.resetLastException();
@@ -297,24 +780,42 @@ public class Drawing implements Serializable {
         }
     }
 
+    private static boolean isBeforeChange(EventObject e) {
+        if (e instanceof DrawingObjectEvent) {
+            return ((DrawingObjectEvent) e).isBeforeChange();
+        }
+        return e instanceof DrawingEvent && ((DrawingEvent) e).isBeforeChange();
+    }
+
+    /**
+     * 
+     * @param eventClass
+     *            eventClass
+     * @return whether any listener of this drawing would receive pre-change
+     *         events of class eventClass, i.e. might reject them (see
+     *         {@link PostChangeListener})
+     */
+    boolean hasBeforeChangeListeners(Class<? extends EventObject> eventClass) {
+        return drawingListeners.getListenersFor(eventClass, true).length > 0;
+    }
+
     @Override
     public Object clone() throws CloneNotSupportedException {
         return Misc.deepCopy(this);
     }
 
     private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
-        drawingListeners = new ArrayList<DrawingListener>();
+        drawingListeners = ListenerTable.EMPTY;
+        spatialIndex = new RTree<DrawingObject>();
         in.defaultReadObject();
-        // the drawingObjects list was read from the stream, but all the associated processing
+        // the drawingObjects list was read from the stream (as a plain list -- see
+        // IndexedIdentityList#writeReplace), but all the associated processing
         // (adding drawingObjectEventForwarder to each object, creating the DrawingAdapter for each object, etc.)
-        // wasn't done, so we're in an invalid state right now. Clear out drawingObjects and re-add
-        // all the DrawingObjects through the regular addDrawingObject method so all the necessary
-        // processing can take place.
-        // TODO: ideally, we'd read the drawingObjects field manually from the stream without
-        //   immediately setting it into this.drawingObjects, thus obviating the need to clear
-        //   out the latter. Consult the Java Object Serialization spec for how to do this.
-        ArrayList<DrawingObject> deserializedObjs = new ArrayList<DrawingObject>(drawingObjects);
-        drawingObjects.clear();
+        // wasn't done, so we're in an invalid state right now. Replace drawingObjects with an empty
+        // list and re-add all the DrawingObjects through the regular addDrawingObject method so
+        // all the necessary processing can take place.
+        List<DrawingObject> deserializedObjs = drawingObjects;
+        drawingObjects = new IndexedIdentityList<DrawingObject>();
         for (DrawingObject o : deserializedObjs) {
             addDrawingObject(o);
         }
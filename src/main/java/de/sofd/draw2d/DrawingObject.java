@@ -4,17 +4,19 @@ import de.sofd.draw2d.event.ChangeRejectedException;
 import java.awt.Color;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import de.sofd.draw2d.event.DrawingObjectColorChangeEvent;
 import de.sofd.draw2d.event.DrawingObjectEvent;
 import de.sofd.draw2d.event.DrawingObjectListener;
 import de.sofd.draw2d.event.DrawingObjectLocationChangeEvent;
 import de.sofd.draw2d.event.DrawingObjectTagChangeEvent;
+import de.sofd.draw2d.event.PostChangeListener;
 import de.sofd.draw2d.viewer.DrawingViewer;
 import de.sofd.util.Misc;
 import java.io.IOException;
@@ -37,10 +39,58 @@ public abstract class DrawingObject implements Serializable, Cloneable {
     
     private static final long serialVersionUID = -3793808304161426235L;
 
-    private /*final*/ transient List<DrawingObjectListener> drawingObjectListeners =
-        new ArrayList<DrawingObjectListener>();  // field can't be final because of deserialization
+    private static final DrawingObjectListener[] NO_LISTENERS = new DrawingObjectListener[0];
+
+    /**
+     * The listeners, copy-on-write: the array is replaced rather than
+     * modified when listeners are added or removed, so firing an event can
+     * iterate over it without copying (and listeners may add or remove
+     * listeners while an event is being fired).
+     */
+    private transient volatile DrawingObjectListener[] drawingObjectListeners = NO_LISTENERS;
+    // the listeners that receive pre-change events: all but the PostChangeListeners
+    private transient volatile DrawingObjectListener[] beforeChangeListeners = NO_LISTENERS;
     
     private final Location location = new Location(0,0,0,0);
+
+    private boolean reusingLocationChangeEvents = false;
+
+    /**
+     * Classes that override neither {@link #getLocation()} nor
+     * {@link #setLocation(Location)}, i.e. store their location in the
+     * location field, by class.
+     */
+    private static final Map<Class<?>, Boolean> defaultLocationStorageByClass =
+        Collections.synchronizedMap(new WeakHashMap<Class<?>, Boolean>());
+
+    // per-instance cache of defaultLocationStorageByClass.get(getClass())
+    private transient Boolean defaultLocationStorage;
+
+    /**
+     * Buffers for changing an object's location without allocating anything
+     * (see {@link #setReusingLocationChangeEvents(boolean)}). Each thread has
+     * a free list of them rather than a single instance because listeners may
+     * change the location of (other) objects while an event is being fired.
+     */
+    private static final class LocationChangeBuffers {
+        final Location oldLocation = new Location();
+        final Location newLocation = new Location();
+        final DrawingObjectLocationChangeEvent event;
+        LocationChangeBuffers next;
+
+        LocationChangeBuffers(DrawingObject source) {
+            event = DrawingObjectLocationChangeEvent.newReusableEvent(source);
+        }
+    }
+
+    // per thread: one-element array holding the head of the free list
+    private static final ThreadLocal<LocationChangeBuffers[]> freeLocationChangeBuffers =
+        new ThreadLocal<LocationChangeBuffers[]>() {
+            @Override
+            protected LocationChangeBuffers[] initialValue() {
+                return new LocationChangeBuffers[1];
+            }
+        };
     
     private Color color = Color.RED;
     
@@ -58,6 +108,24 @@ public abstract class DrawingObject implements Serializable, Cloneable {
         return new Location(location);
     }
 
+    /**
+     * Like {@link #getLocation()}, but copies the location into result instead
+     * of allocating a new Location (unless a subclass overrides
+     * {@link #getLocation()}).
+     * 
+     * @param result
+     *            the Location to copy this object's location into
+     * @return result
+     */
+    public Location getLocation(Location result) {
+        if (hasDefaultLocationStorage()) {
+            result.setLocation(location);
+        } else {
+            result.setLocation(getLocation());
+        }
+        return result;
+    }
+
     /**
      * "Relocate" the object by specifying its new bounding box. This can be
      * used to change the position or the dimensions of the object, or both.
@@ -82,14 +150,27 @@ public abstract class DrawingObject implements Serializable, Cloneable {
      * {@link #setLocation(double, double, double, double)},
      * {@link #setLocationPt(int, Point2D)}, {@link #moveBy(double, double)})
      * are just convenience wrappers around this method; they're all guaranteed
-     * to ultimately call this one.
+     * to ultimately call this one if a subclass overrides it. (Otherwise, if
+     * {@link #isReusingLocationChangeEvents()}, they change the location
+     * directly, without allocating an intermediate Location.)
      * 
      * @param newLocation
      *            new location for this object
      */
     public void setLocation(Location newLocation) {
+        if (reusingLocationChangeEvents) {
+            LocationChangeBuffers buffers = acquireLocationChangeBuffers();
+            try {
+                buffers.newLocation.setLocation(newLocation);
+                setLocationReusingEvents(buffers);
+            } finally {
+                releaseLocationChangeBuffers(buffers);
+            }
+            return;
+        }
         Location oldLocation = new Location(this.location);
-        if (fireDrawingObjectEvent(new DrawingObjectLocationChangeEvent(this, true, oldLocation, newLocation))) {
+        if (canSkipBeforeChangeEvent(DrawingObjectLocationChangeEvent.class) ||
+                fireDrawingObjectEvent(new DrawingObjectLocationChangeEvent(this, true, oldLocation, newLocation))) {
             this.location.setLocation(newLocation);
             onLocationChanged(oldLocation);
             fireDrawingObjectEvent(new DrawingObjectLocationChangeEvent(this, false, oldLocation, newLocation));
@@ -97,12 +178,39 @@ public abstract class DrawingObject implements Serializable, Cloneable {
         }
     }
     
+    /**
+     * Store newLocation as this object's location without firing any events or
+     * calling {@link #onLocationChanged(Location)} /
+     * {@link #onLocationChangedAfterEvents(Location)}. For subclasses that
+     * signal location changes as part of their own, more specific events
+     * (which must be {@link DrawingObjectLocationChangeEvent}s so that
+     * listeners, like the {@link Drawing}'s spatial index, see the change).
+     * Those subclasses are responsible for firing the events and calling the
+     * hooks in the same order as {@link #setLocation(Location)} does.
+     * 
+     * @param newLocation
+     *            newLocation
+     */
+    protected void setLocationWithoutEvents(Location newLocation) {
+        this.location.setLocation(newLocation);
+    }
+
     public void setLocation(double x1, double y1, double x2, double y2) {
-        setLocation(new Location(x1, y1, x2, y2));
+        if (reusingLocationChangeEvents && hasDefaultLocationStorage()) {
+            LocationChangeBuffers buffers = acquireLocationChangeBuffers();
+            try {
+                buffers.newLocation.setLocation(x1, y1, x2, y2);
+                setLocationReusingEvents(buffers);
+            } finally {
+                releaseLocationChangeBuffers(buffers);
+            }
+        } else {
+            setLocation(new Location(x1, y1, x2, y2));
+        }
     }
     
     public void setLocation(Point2D pt0, Point2D pt2) {
-        setLocation(new Location(pt0, pt2));
+        setLocation(pt0.getX(), pt0.getY(), pt2.getX(), pt2.getY());
     }
     
     public Point2D getLocationPt(int n) {
@@ -110,15 +218,133 @@ public abstract class DrawingObject implements Serializable, Cloneable {
     }
     
     public void setLocationPt(int n, Point2D pt) {
-        Location newLoc = new Location(location);
-        newLoc.setPt(n, pt);
-        setLocation(newLoc);
+        if (reusingLocationChangeEvents && hasDefaultLocationStorage()) {
+            LocationChangeBuffers buffers = acquireLocationChangeBuffers();
+            try {
+                buffers.newLocation.setLocation(location);
+                buffers.newLocation.setPt(n, pt);
+                setLocationReusingEvents(buffers);
+            } finally {
+                releaseLocationChangeBuffers(buffers);
+            }
+        } else {
+            Location newLoc = new Location(location);
+            newLoc.setPt(n, pt);
+            setLocation(newLoc);
+        }
     }
 
     public void moveBy(double dx, double dy) {
-        Location newLoc = new Location(location);
-        newLoc.moveBy(dx, dy);
-        setLocation(newLoc);
+        if (reusingLocationChangeEvents && hasDefaultLocationStorage()) {
+            LocationChangeBuffers buffers = acquireLocationChangeBuffers();
+            try {
+                buffers.newLocation.setLocation(location);
+                buffers.newLocation.moveBy(dx, dy);
+                setLocationReusingEvents(buffers);
+            } finally {
+                releaseLocationChangeBuffers(buffers);
+            }
+        } else {
+            Location newLoc = new Location(location);
+            newLoc.moveBy(dx, dy);
+            setLocation(newLoc);
+        }
+    }
+
+    /**
+     * Tell whether this object fires reusable
+     * {@link DrawingObjectLocationChangeEvent}s. See
+     * {@link #setReusingLocationChangeEvents(boolean)}.
+     * 
+     * @return whether this object fires reusable location change events
+     */
+    public boolean isReusingLocationChangeEvents() {
+        return reusingLocationChangeEvents;
+    }
+
+    /**
+     * Set whether this object should fire reusable
+     * {@link DrawingObjectLocationChangeEvent}s (see
+     * {@link DrawingObjectLocationChangeEvent#newReusableEvent(DrawingObject)}).
+     * If true, location changes (including the
+     * {@link #setLocation(double, double, double, double)},
+     * {@link #setLocationPt(int, Point2D)} and {@link #moveBy(double, double)}
+     * convenience methods, which then don't create an intermediate Location)
+     * fire per-thread event instances that are reused for subsequent changes,
+     * with per-thread Locations as the last and new location, and pass the
+     * same per-thread Location to {@link #onLocationChanged(Location)} and
+     * {@link #onLocationChangedAfterEvents(Location)}. So they don't allocate
+     * anything, which reduces garbage collection during drags of many
+     * objects. Only enable this if none of the listeners of this object and
+     * of the drawing it is part of, and none of this object's location change
+     * hooks, keep the events or their locations after they have been
+     * delivered (see {@link DrawingObjectLocationChangeEvent#toImmutable()}).
+     * {@link Drawing#beginBatch() Batches} and
+     * {@link de.sofd.draw2d.event.AsyncDrawingListener}s copy the events they
+     * keep.
+     * <p>
+     * Default is false.
+     * 
+     * @param reusingLocationChangeEvents
+     *            reusingLocationChangeEvents
+     */
+    public void setReusingLocationChangeEvents(boolean reusingLocationChangeEvents) {
+        this.reusingLocationChangeEvents = reusingLocationChangeEvents;
+    }
+
+    /**
+     * Like {@link #setLocation(Location)}, but using the buffers' locations
+     * and event. buffers.newLocation must contain the new location.
+     */
+    private void setLocationReusingEvents(LocationChangeBuffers buffers) {
+        Location oldLocation = buffers.oldLocation;
+        Location newLocation = buffers.newLocation;
+        oldLocation.setLocation(this.location);
+        if (canSkipBeforeChangeEvent(DrawingObjectLocationChangeEvent.class) ||
+                fireDrawingObjectEvent(buffers.event.reinit(this, true, oldLocation, newLocation))) {
+            this.location.setLocation(newLocation);
+            onLocationChanged(oldLocation);
+            fireDrawingObjectEvent(buffers.event.reinit(this, false, oldLocation, newLocation));
+            onLocationChangedAfterEvents(oldLocation);
+        }
+    }
+
+    private LocationChangeBuffers acquireLocationChangeBuffers() {
+        LocationChangeBuffers[] head = freeLocationChangeBuffers.get();
+        LocationChangeBuffers result = head[0];
+        if (null == result) {
+            return new LocationChangeBuffers(this);
+        }
+        head[0] = result.next;
+        result.next = null;
+        return result;
+    }
+
+    private static void releaseLocationChangeBuffers(LocationChangeBuffers buffers) {
+        // don't keep the object reachable
+        buffers.event.reinit(null, false, null, null);
+        LocationChangeBuffers[] head = freeLocationChangeBuffers.get();
+        buffers.next = head[0];
+        head[0] = buffers;
+    }
+
+    private boolean hasDefaultLocationStorage() {
+        Boolean result = defaultLocationStorage;
+        if (null == result) {
+            Class<?> c = getClass();
+            result = defaultLocationStorageByClass.get(c);
+            if (null == result) {
+                try {
+                    result = (c.getMethod("getLocation").getDeclaringClass() == DrawingObject.class &&
+                              c.getMethod("setLocation", Location.class).getDeclaringClass() == DrawingObject.class);
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalStateException(e);  // can't happen
+                }
+                defaultLocationStorageByClass.put(c, result);
+            }
+            defaultLocationStorage = result;
+        }
+        return result;
     }
 
     public Rectangle2D getBounds2D() {
@@ -129,7 +355,9 @@ public abstract class DrawingObject implements Serializable, Cloneable {
      * Called immediately after this DrawingObject's {@link #getLocation()} has
      * changed (before any post-change {@link DrawingObjectLocationChangeEvent}s
      * are fired). The new position is already in {@link #getLocation()};
-     * oldLocation is the previous location.
+     * oldLocation is the previous location. It may be a reused Location that
+     * is only valid during this call (see
+     * {@link #setReusingLocationChangeEvents(boolean)}).
      * <p>
      * DrawingObject's implementation of this method does nothing.
      * 
@@ -144,7 +372,9 @@ public abstract class DrawingObject implements Serializable, Cloneable {
      * Called immediately after this DrawingObject's {@link #getLocation()} has
      * changed and all post-change {@link DrawingObjectLocationChangeEvent}
      * listeners have been invoked. The new position is in
-     * {@link #getLocation()}; oldLocation is the previous location.
+     * {@link #getLocation()}; oldLocation is the previous location. It may be
+     * a reused Location that is only valid during this call (see
+     * {@link #setReusingLocationChangeEvents(boolean)}).
      * <p>
      * DrawingObject's implementation of this method does nothing.
      * 
@@ -161,7 +391,8 @@ public abstract class DrawingObject implements Serializable, Cloneable {
     
     public void setColor(Color newColor) {
         Color oldColor = this.color;
-        if (fireDrawingObjectEvent(DrawingObjectColorChangeEvent.newBeforeChangeEvent(this, oldColor, newColor))) {
+        if (canSkipBeforeChangeEvent(DrawingObjectColorChangeEvent.class) ||
+                fireDrawingObjectEvent(DrawingObjectColorChangeEvent.newBeforeChangeEvent(this, oldColor, newColor))) {
             this.color = newColor;
             fireDrawingObjectEvent(DrawingObjectColorChangeEvent.newAfterChangeEvent(this, oldColor, newColor));
         }
@@ -173,7 +404,8 @@ public abstract class DrawingObject implements Serializable, Cloneable {
     
     public void setTag(String name, Object value) {
         Object oldValue = getTag(name);
-        if (fireDrawingObjectEvent(DrawingObjectTagChangeEvent.newBeforeChangeEvent(this, name, oldValue, value))) {
+        if (canSkipBeforeChangeEvent(DrawingObjectTagChangeEvent.class) ||
+                fireDrawingObjectEvent(DrawingObjectTagChangeEvent.newBeforeChangeEvent(this, name, oldValue, value))) {
             tags.put(name, value);
             fireDrawingObjectEvent(DrawingObjectTagChangeEvent.newAfterChangeEvent(this, name, oldValue, value));
         }
@@ -181,7 +413,8 @@ public abstract class DrawingObject implements Serializable, Cloneable {
     
     public void deleteTag(String name) {
         Object oldValue = getTag(name);
-        if (fireDrawingObjectEvent(DrawingObjectTagChangeEvent.newBeforeChangeEvent(this, name, oldValue, null))) {
+        if (canSkipBeforeChangeEvent(DrawingObjectTagChangeEvent.class) ||
+                fireDrawingObjectEvent(DrawingObjectTagChangeEvent.newBeforeChangeEvent(this, name, oldValue, null))) {
             tags.remove(name);
             fireDrawingObjectEvent(DrawingObjectTagChangeEvent.newAfterChangeEvent(this, name, oldValue, null));
         }
@@ -216,16 +449,72 @@ public abstract class DrawingObject implements Serializable, Cloneable {
         }
     }
 
-    public void addDrawingObjectListener(DrawingObjectListener l) {
-        drawingObjectListeners.add(l);
+    public synchronized void addDrawingObjectListener(DrawingObjectListener l) {
+        DrawingObjectListener[] listeners = drawingObjectListeners;
+        DrawingObjectListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+        newListeners[listeners.length] = l;
+        setListeners(newListeners);
     }
     
-    public void removeDrawingObjectListener(DrawingObjectListener l) {
-        drawingObjectListeners.remove(l);
+    public synchronized void removeDrawingObjectListener(DrawingObjectListener l) {
+        DrawingObjectListener[] listeners = drawingObjectListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == null ? l == null : listeners[i].equals(l)) {
+                DrawingObjectListener[] newListeners = new DrawingObjectListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, newListeners, 0, i);
+                System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                setListeners(newListeners);
+                return;
+            }
+        }
+    }
+
+    private void setListeners(DrawingObjectListener[] listeners) {
+        int n = 0;
+        DrawingObjectListener[] before = new DrawingObjectListener[listeners.length];
+        for (DrawingObjectListener l : listeners) {
+            if (!(l instanceof PostChangeListener)) {
+                before[n++] = l;
+            }
+        }
+        beforeChangeListeners = (n == 0 ? NO_LISTENERS : Arrays.copyOf(before, n));
+        drawingObjectListeners = listeners;
+    }
+
+    /**
+     * Tell whether the pre-change event of a change may be skipped because no
+     * listener would receive it, i.e. because all listeners of this object and
+     * of the drawing it is part of (if any) that are interested in events of
+     * class eventClass are {@link PostChangeListener}s. Meant for methods that
+     * change the object, which can then avoid creating the event at all:
+     * <pre>
+     * if (canSkipBeforeChangeEvent(SomeEvent.class) ||
+     *         fireDrawingObjectEvent(new SomeEvent(this, true, ...))) {
+     *     // make the change, fire the post-change event
+     * }
+     * </pre>
+     * If it returns true, it resets
+     * {@link ChangeRejectedException#getLastException()} like a successfully
+     * fired event would.
+     * 
+     * @param eventClass
+     *            class of the pre-change event
+     * @return true if the event may be skipped
+     */
+    protected boolean canSkipBeforeChangeEvent(Class<? extends DrawingObjectEvent> eventClass) {
+        for (DrawingObjectListener l : beforeChangeListeners) {
+            if (!(l instanceof Drawing.DrawingObjectEventForwarderClass) ||
+                    ((Drawing.DrawingObjectEventForwarderClass) l).hasBeforeChangeListeners(eventClass)) {
+                return false;
+            }
+        }
+        ChangeRejectedException.resetLastException();
+        return true;
     }
 
     /**
-     * Helper method for firing {@link DrawingObjectEvent}s.
+     * Helper method for firing {@link DrawingObjectEvent}s. Pre-change events
+     * aren't sent to {@link PostChangeListener}s.
      *
      * @param e the event
      * @return false if e was a pre-change event and one of the listeners rejected
@@ -236,9 +525,9 @@ public abstract class DrawingObject implements Serializable, Cloneable {
      */
     protected boolean fireDrawingObjectEvent(DrawingObjectEvent e) {
         try {
-            // iterate over a copy of drawingObjectListeners so a listener adding new listeners
-            // won't lead to ConcurrentModificationException
-            for (DrawingObjectListener l : drawingObjectListeners.toArray(new DrawingObjectListener[drawingObjectListeners.size()])) {
+            // the array is never modified, so listeners adding or removing
+            // listeners don't affect this loop
+            for (DrawingObjectListener l : (e.isBeforeChange() ? beforeChangeListeners : drawingObjectListeners)) {
                 l.onDrawingObjectEvent(e);
             }
             ChangeRejectedException.resetLastException();
@@ -255,7 +544,7 @@ public abstract class DrawingObject implements Serializable, Cloneable {
     }
 
     private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
-        drawingObjectListeners = new ArrayList<DrawingObjectListener>();
+        drawingObjectListeners = beforeChangeListeners = NO_LISTENERS;
         in.defaultReadObject();
     }
 
@@ -0,0 +1,346 @@
+package de.sofd.draw2d;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * List that contains each element at most once and that looks elements up by
+ * identity rather than by {@link Object#equals(Object)}. Backed by a treap
+ * ordered by position (an "implicit" treap) whose nodes know their parent and
+ * subtree size, plus an identity map from each element to its node. That gives
+ * O(1) {@link #contains(Object)} and O(log n) {@link #indexOf(Object)},
+ * {@link #get(int)}, {@link #add(int, Object)} and {@link #remove(int)} /
+ * {@link #remove(Object)}, so moving an element to a different position is
+ * O(log n) as well.
+ * <p>
+ * Adding an element that's already contained throws an
+ * {@link IllegalArgumentException}; null elements aren't allowed.
+ * <p>
+ * Used by {@link Drawing} for storing its objects in z order. Serializes as a
+ * plain {@link ArrayList}. Not thread-safe.
+ *
+ * @author olaf
+ */
+final class IndexedIdentityList<E> extends AbstractList<E> implements Serializable {
+
+    private static final long serialVersionUID = 6387049614562236907L;
+
+    private static final class Node<E> {
+        E value;
+        final int priority;
+        Node<E> left, right, parent;
+        int size = 1;
+
+        Node(E value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+    }
+
+    private Node<E> root;
+    private final Map<E, Node<E>> nodes = new IdentityHashMap<E, Node<E>>();
+
+    private int seed = 0x2545F491;
+
+    // results of split(); only valid immediately after calling it
+    private Node<E> splitLeft, splitRight;
+
+    public IndexedIdentityList() {
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return nodes.containsKey(o);
+    }
+
+    @Override
+    public E get(int index) {
+        return nodeAt(index).value;
+    }
+
+    /**
+     *
+     * @param o
+     *            o
+     * @return position of o (compared by identity), or -1 if o isn't contained
+     */
+    @Override
+    public int indexOf(Object o) {
+        Node<E> node = nodes.get(o);
+        if (null == node) {
+            return -1;
+        }
+        int result = size(node.left);
+        while (node.parent != null) {
+            if (node == node.parent.right) {
+                result += size(node.parent.left) + 1;
+            }
+            node = node.parent;
+        }
+        return result;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public void add(int index, E element) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (null == element) {
+            throw new NullPointerException();
+        }
+        if (nodes.containsKey(element)) {
+            throw new IllegalArgumentException("element already contained: " + element);
+        }
+        Node<E> node = new Node<E>(element, nextPriority());
+        nodes.put(element, node);
+        split(root, index);
+        Node<E> left = splitLeft, right = splitRight;
+        root = merge(merge(left, node), right);
+        root.parent = null;
+        modCount++;
+    }
+
+    @Override
+    public E remove(int index) {
+        Node<E> node = nodeAt(index);
+        removeNode(node);
+        return node.value;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        Node<E> node = nodes.get(o);
+        if (null == node) {
+            return false;
+        }
+        removeNode(node);
+        return true;
+    }
+
+    /**
+     * Replace the element at index in place (O(1) after looking up the
+     * position). Throws an {@link IllegalArgumentException}, without changing
+     * the list, if element is contained at a different position.
+     */
+    @Override
+    public E set(int index, E element) {
+        Node<E> node = nodeAt(index);
+        E oldValue = node.value;
+        if (oldValue == element) {
+            return oldValue;
+        }
+        if (null == element) {
+            throw new NullPointerException();
+        }
+        if (nodes.containsKey(element)) {
+            throw new IllegalArgumentException("element already contained: " + element);
+        }
+        nodes.remove(oldValue);
+        node.value = element;
+        nodes.put(element, node);
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        nodes.clear();
+        modCount++;
+    }
+
+    /**
+     * In-order iterator that walks the tree directly (O(1) amortized per
+     * step) instead of calling {@link #get(int)} for each position.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private Node<E> next = leftmost(root);
+            private Node<E> lastReturned;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (null == next) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = next;
+                next = successor(next);
+                return lastReturned.value;
+            }
+
+            @Override
+            public void remove() {
+                if (null == lastReturned) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                removeNode(lastReturned);
+                lastReturned = null;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    // internals
+
+    private int nextPriority() {
+        // xorshift
+        seed ^= (seed << 13);
+        seed ^= (seed >>> 17);
+        seed ^= (seed << 5);
+        return seed;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Recompute node's size and point its children's parent links to it.
+     */
+    private static <E> void update(Node<E> node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        if (node.left != null) {
+            node.left.parent = node;
+        }
+        if (node.right != null) {
+            node.right.parent = node;
+        }
+    }
+
+    private Node<E> nodeAt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node<E> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Split tree t into the first k nodes (result in splitLeft) and the rest
+     * (splitRight).
+     */
+    private void split(Node<E> t, int k) {
+        if (null == t) {
+            splitLeft = splitRight = null;
+            return;
+        }
+        int leftSize = size(t.left);
+        if (k <= leftSize) {
+            split(t.left, k);
+            t.left = splitRight;
+            update(t);
+            splitRight = t;
+        } else {
+            split(t.right, k - leftSize - 1);
+            t.right = splitLeft;
+            update(t);
+            splitLeft = t;
+        }
+    }
+
+    /**
+     * Concatenate trees a and b.
+     */
+    private Node<E> merge(Node<E> a, Node<E> b) {
+        if (null == a) {
+            return b;
+        }
+        if (null == b) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        } else {
+            b.left = merge(a, b.left);
+            update(b);
+            return b;
+        }
+    }
+
+    private void removeNode(Node<E> node) {
+        nodes.remove(node.value);
+        Node<E> replacement = merge(node.left, node.right);
+        Node<E> parent = node.parent;
+        if (replacement != null) {
+            replacement.parent = parent;
+        }
+        if (null == parent) {
+            root = replacement;
+        } else if (parent.left == node) {
+            parent.left = replacement;
+        } else {
+            parent.right = replacement;
+        }
+        for (Node<E> n = parent; n != null; n = n.parent) {
+            n.size--;
+        }
+        node.left = node.right = node.parent = null;
+        modCount++;
+    }
+
+    private static <E> Node<E> leftmost(Node<E> node) {
+        if (null == node) {
+            return null;
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    private static <E> Node<E> successor(Node<E> node) {
+        if (node.right != null) {
+            return leftmost(node.right);
+        }
+        while (node.parent != null && node == node.parent.right) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new ArrayList<E>(this);
+    }
+
+}
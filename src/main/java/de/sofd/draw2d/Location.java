@@ -65,6 +65,22 @@ public class Location implements Serializable {
         setLocation(other);
     }
 
+    public double getX1() {
+        return x1;
+    }
+
+    public double getY1() {
+        return y1;
+    }
+
+    public double getX2() {
+        return x2;
+    }
+
+    public double getY2() {
+        return y2;
+    }
+
     public Point2D getPt0() {
         return new Point2D.Double(x1,y1);
     }
@@ -174,6 +190,13 @@ public class Location implements Serializable {
         this.y2 = other.y2;
     }
 
+    public void setLocation(double x1, double y1, double x2, double y2) {
+        this.x1 = x1;
+        this.y1 = y1;
+        this.x2 = x2;
+        this.y2 = y2;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
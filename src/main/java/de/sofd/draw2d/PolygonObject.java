@@ -3,9 +3,16 @@ package de.sofd.draw2d;
 import de.sofd.draw2d.event.ChangeRejectedException;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import de.sofd.draw2d.event.DrawingObjectEvent;
+import de.sofd.draw2d.event.DrawingObjectLocationChangeEvent;
 import de.sofd.draw2d.event.PolygonPointAddEvent;
 import java.beans.DefaultPersistenceDelegate;
 import java.beans.Encoder;
@@ -17,9 +24,29 @@ public class PolygonObject extends DrawingObject {
     
     private static final long serialVersionUID = -1665813672031268850L;
 
-    private ArrayList<Point2D> points = new ArrayList<Point2D>();
+    /**
+     * The polygon's points, x and y coordinates interleaved (x0, y0, x1, y1,
+     * ...). Only the first 2*pointCount elements are used; the array grows as
+     * needed.
+     * <p>
+     * Not serialized directly; see {@link #serialPersistentFields}.
+     */
+    private double[] coords = new double[16];
+    private int pointCount = 0;
     private boolean isClosed = true;
 
+    /**
+     * Polygons with at least this many points use an {@link EdgeTable} in
+     * {@link #contains(Point2D)}; smaller ones just test all edges.
+     */
+    private static final int EDGE_TABLE_MIN_POINTS = 64;
+
+    /**
+     * lazily built by {@link #contains(Point2D)}; null if not built yet or if
+     * the points changed since. Not serialized.
+     */
+    private transient EdgeTable edgeTable;
+
     /**
      * during "internal" location changes (i.e. changes to the bounding box as a
      * reaction to polygon points being added/moved/removed) we must not scale
@@ -38,124 +65,201 @@ public class PolygonObject extends DrawingObject {
         }
     }
     
-    protected void internalSetLocation(final Point2D pt0, final Point2D pt2) {
-        runInInternalSetLocation(new Runnable() {
-            @Override
-            public void run() {
-                setLocation(pt0, pt2);
-                if (null != ChangeRejectedException.getLastException()) {
-                    throw ChangeRejectedException.getLastException();
-                }
-            }
-        });
+    protected void internalSetLocation(Point2D pt0, Point2D pt2) {
+        internalSetLocation(new Location(pt0, pt2));
     }
     
-    protected void internalSetLocation(final Location newLocation) {
-        runInInternalSetLocation(new Runnable() {
-            @Override
-            public void run() {
-                setLocation(newLocation);
-                if (null != ChangeRejectedException.getLastException()) {
-                    throw ChangeRejectedException.getLastException();
-                }
+    protected void internalSetLocation(Location newLocation) {
+        boolean oldValue = inInternalSetLocation;
+        inInternalSetLocation = true;
+        try {
+            setLocation(newLocation);
+            if (null != ChangeRejectedException.getLastException()) {
+                throw ChangeRejectedException.getLastException();
             }
-        });
+        } finally {
+            inInternalSetLocation = oldValue;
+        }
     }
     
     public int getPointCount() {
-        return points.size();
+        return pointCount;
     }
     
     public Point2D getPoint(int index) {
-        Point2D result = points.get(index);
-        return new Point2D.Double(result.getX(), result.getY());
+        checkPointIndex(index);
+        return new Point2D.Double(coords[2 * index], coords[2 * index + 1]);
+    }
+
+    /**
+     * 
+     * @param index
+     *            index
+     * @return x coordinate of the point at index index. Unlike
+     *         {@link #getPoint(int)}, this doesn't allocate anything.
+     */
+    public double getX(int index) {
+        checkPointIndex(index);
+        return coords[2 * index];
+    }
+
+    /**
+     * 
+     * @param index
+     *            index
+     * @return y coordinate of the point at index index. Unlike
+     *         {@link #getPoint(int)}, this doesn't allocate anything.
+     */
+    public double getY(int index) {
+        checkPointIndex(index);
+        return coords[2 * index + 1];
+    }
+
+    /**
+     * Copy the coordinates of all points into an array, x and y interleaved
+     * (x0, y0, x1, y1, ...).
+     * 
+     * @param dst
+     *            the array to copy into, if it can hold at least 2 *
+     *            {@link #getPointCount()} elements. Otherwise (or if it's
+     *            null), a new array of that size is allocated.
+     * @return the array the coordinates were copied into
+     */
+    public double[] copyPoints(double[] dst) {
+        if (null == dst || dst.length < 2 * pointCount) {
+            dst = new double[2 * pointCount];
+        }
+        System.arraycopy(coords, 0, dst, 0, 2 * pointCount);
+        return dst;
+    }
+
+    private void checkPointIndex(int index) {
+        if (index < 0 || index >= pointCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + pointCount);
+        }
+    }
+
+    private void addCoords(double x, double y) {
+        if (2 * pointCount + 2 > coords.length) {
+            coords = Arrays.copyOf(coords, Math.max(2 * coords.length, 2 * pointCount + 2));
+        }
+        coords[2 * pointCount] = x;
+        coords[2 * pointCount + 1] = y;
+        pointCount++;
+        edgeTable = null;
     }
     
     public void appendPoint(Point2D pt) {
+        appendPoint(pt.getX(), pt.getY());
+    }
+
+    public void appendPoint(double x, double y) {
+        appendPoints(new double[]{x, y}, 1);
+    }
+
+    /**
+     * Append n points to the end of the polygon in one go. The polygon's
+     * location is grown to include the new points if necessary, and a single
+     * pair of {@link PolygonPointAddEvent}s is fired for all the points. Those
+     * events carry the location change as well; no separate
+     * {@link DrawingObjectLocationChangeEvent}s are fired. If the pre-change
+     * event is rejected, nothing is added.
+     * 
+     * @param xy
+     *            coordinates of the new points, x and y interleaved (x0, y0,
+     *            x1, y1, ...). Only the first 2*n elements are used.
+     * @param n
+     *            number of points to append
+     */
+    public void appendPoints(double[] xy, int n) {
+        if (n <= 0) {
+            return;
+        }
+        double minX = xy[0], minY = xy[1], maxX = minX, maxY = minY;
+        for (int i = 1; i < n; i++) {
+            double x = xy[2 * i], y = xy[2 * i + 1];
+            if (x < minX) { minX = x; }
+            if (x > maxX) { maxX = x; }
+            if (y < minY) { minY = y; }
+            if (y > maxY) { maxY = y; }
+        }
+        Location lastLocation = getLocation();
+        Location newLocation = getLocationIncluding(pointCount == 0 ? new Location(xy[0], xy[1], xy[0], xy[1]) : lastLocation,
+                                                    minX, minY, maxX, maxY);
+        int pointIndex = pointCount;
+        if (!canSkipBeforeChangeEvent(PolygonPointAddEvent.class) &&
+                !fireDrawingObjectEvent(PolygonPointAddEvent.newBeforeChangeEvent(this, pointIndex, xy, n, lastLocation, newLocation))) {
+            return;
+        }
+        if (2 * (pointCount + n) > coords.length) {
+            coords = Arrays.copyOf(coords, Math.max(2 * coords.length, 2 * (pointCount + n)));
+        }
+        System.arraycopy(xy, 0, coords, 2 * pointCount, 2 * n);
+        pointCount += n;
+        edgeTable = null;
+        boolean locationChanged = !newLocation.equals(lastLocation);
+        boolean oldValue = inInternalSetLocation;
+        inInternalSetLocation = true;
         try {
-            if (points.isEmpty()) {
-                internalSetLocation(pt, pt);
-            } else {
-                expandLocationToInclude(pt);
+            if (locationChanged) {
+                setLocationWithoutEvents(newLocation);
+                onLocationChanged(lastLocation);
             }
-            if (fireDrawingObjectEvent(PolygonPointAddEvent.newBeforeChangeEvent(this, getPointCount(), pt))) {
-                points.add(pt);
-                fireDrawingObjectEvent(PolygonPointAddEvent.newAfterChangeEvent(this, getPointCount() - 1, pt));
+            fireDrawingObjectEvent(PolygonPointAddEvent.newAfterChangeEvent(this, pointIndex, xy, n, lastLocation, newLocation));
+            if (locationChanged) {
+                onLocationChangedAfterEvents(lastLocation);
             }
-        } catch (ChangeRejectedException e) {
-            // the initial internalSetLocation / expandLocationToInclude rejected the location change.
-            // don't add the point, do nothing.
+        } finally {
+            inInternalSetLocation = oldValue;
         }
     }
 
-    public void appendPoint(double x, double y) {
-        appendPoint(new Point2D.Double(x, y));
+    /**
+     * 
+     * @param x
+     *            x
+     * @param y
+     *            y
+     * @return the location this polygon would have after appending the point
+     *         (x, y)
+     */
+    public Location getLocationIncluding(double x, double y) {
+        return getLocationIncluding(pointCount == 0 ? new Location(x, y, x, y) : getLocation(), x, y, x, y);
     }
-    
-    private void expandLocationToInclude(Point2D pt) {
-        Point2D pt0 = getLocationPt(0);
-        Point2D pt2 = getLocationPt(2);
-        int leftmostPtIndex = ( pt0.getX() < pt2.getX() ? 0 : 2);
-        int rightmostPtIndex = 2 - leftmostPtIndex;
-        int topmostPtIndex = ( pt0.getY() < pt2.getY() ? 0 : 2);
-        int bottommostPtIndex = 2 - topmostPtIndex;
-
-        Point2D leftmostPt = getLocationPt(leftmostPtIndex);
-        Point2D rightmostPt = getLocationPt(rightmostPtIndex);
-        Point2D topmostPt;
-        Point2D bottommostPt;
-        if (topmostPtIndex == leftmostPtIndex) {
-            topmostPt = leftmostPt;
-            bottommostPt = rightmostPt;
+
+    /**
+     * 
+     * @return a copy of loc grown to include the box (minX,minY)--(maxX,maxY).
+     *         Which corner coordinates of loc are moved depends on loc's
+     *         orientation, which is kept intact.
+     */
+    private static Location getLocationIncluding(Location loc, double minX, double minY, double maxX, double maxY) {
+        double x1 = loc.getX1(), y1 = loc.getY1(), x2 = loc.getX2(), y2 = loc.getY2();
+        if (x1 < x2) {
+            x1 = Math.min(x1, minX);
+            x2 = Math.max(x2, maxX);
         } else {
-            topmostPt = rightmostPt;
-            bottommostPt = leftmostPt;
+            x2 = Math.min(x2, minX);
+            x1 = Math.max(x1, maxX);
         }
-        
-        Location newLocation = new Location(getLocation());
-        boolean locationChanged = false;
-        if (pt.getX() < leftmostPt.getX()) {
-            leftmostPt.setLocation(pt.getX(), leftmostPt.getY());
-            newLocation.setPt(leftmostPtIndex, leftmostPt);
-            locationChanged = true;
-        }
-        if (pt.getX() > rightmostPt.getX()) {
-            rightmostPt.setLocation(pt.getX(), rightmostPt.getY());
-            newLocation.setPt(rightmostPtIndex, rightmostPt);
-            locationChanged = true;
-        }
-        if (pt.getY() < topmostPt.getY()) {
-            topmostPt.setLocation(topmostPt.getX(), pt.getY());
-            newLocation.setPt(topmostPtIndex, topmostPt);
-            locationChanged = true;
-        }
-        if (pt.getY() > bottommostPt.getY()) {
-            bottommostPt.setLocation(bottommostPt.getX(), pt.getY());
-            newLocation.setPt(bottommostPtIndex, bottommostPt);
-            locationChanged = true;
-        }
-        
-        if (locationChanged) {
-            internalSetLocation(newLocation);
+        if (y1 < y2) {
+            y1 = Math.min(y1, minY);
+            y2 = Math.max(y2, maxY);
+        } else {
+            y2 = Math.min(y2, minY);
+            y1 = Math.max(y1, maxY);
         }
+        return new Location(x1, y1, x2, y2);
     }
 
-    private void movePoint(int ptIndex, Point2D newPt, boolean adjustBounds) {
-        points.set(ptIndex, (Point2D) newPt.clone());
-        // TODO: implement adjustBounds == true
-    }
-    
     @Override
     protected void onLocationChangedAfterEvents(Location oldLocation) {
         if (!inInternalSetLocation) {
             // scale all the points
             Location newLocation = getLocation();
             AffineTransform t = getLocationTransform(oldLocation, newLocation);
-            int count = getPointCount();
-            for (int i = 0; i < count; ++i) {
-                Point2D newPt = t.transform(points.get(i), null);
-                movePoint(i, newPt, false);
-            }
+            t.transform(coords, 0, coords, 0, pointCount);
+            edgeTable = null;
             // send just generic "something's changed" message, triggering a complete redraw.
             // may use more specific change event later
             fireDrawingObjectEvent(new DrawingObjectEvent(this));
@@ -199,28 +303,229 @@ public class PolygonObject extends DrawingObject {
         //result true <=> beam in +x direction starting at pt crosses
         //                the polygon's outline an odd number of times
 
-        int pointsCount = points.size();
+        int pointsCount = pointCount;
         if (pointsCount < 2) { return false; }
-        Point2D prevVertex = points.get(0);
+        double ptX = pt.getX(), ptY = pt.getY();
+        if (pointsCount >= EDGE_TABLE_MIN_POINTS) {
+            if (null == edgeTable) {
+                edgeTable = new EdgeTable(coords, pointsCount);
+            }
+            if (edgeTable.isUsable()) {
+                return edgeTable.countCrossings(coords, pointsCount, ptX, ptY) % 2 == 1;
+            }
+        }
+        double prevX = coords[0], prevY = coords[1];
         int nCrosses = 0;
-        // for each edge (prevVertex---vertex)
+        // for each edge (prevVertex---vertex). Same test as crosses(), but
+        // reusing the previous vertex, which is measurably faster for small polygons
         for (int i = 1; i <= pointsCount; i++) {
-            Point2D vertex = points.get(i==pointsCount ? 0 : i);
-            if ((prevVertex.getY() > pt.getY()) == (vertex.getY() > pt.getY())) {
-                prevVertex = vertex;
+            int vi = (i==pointsCount ? 0 : 2*i);
+            double x = coords[vi], y = coords[vi + 1];
+            if ((prevY > ptY) == (y > ptY)) {
+                prevX = x;
+                prevY = y;
                 // edge lies completely inside one of the two half spaces defined by the beam
                 continue;
             }
-            double crossX = prevVertex.getX() + (vertex.getX()-prevVertex.getX())*(pt.getY()-prevVertex.getY())/(vertex.getY()-prevVertex.getY());
-            if (crossX > pt.getX()) {
+            double crossX = prevX + (x-prevX)*(ptY-prevY)/(y-prevY);
+            if (crossX > ptX) {
                 nCrosses++;
             }
 
-            prevVertex = vertex;
+            prevX = x;
+            prevY = y;
         }
         return nCrosses%2 == 1;
     }
-    
+
+    /**
+     * 
+     * @return true iff the beam in +x direction starting at (ptX,ptY) crosses
+     *         edge e (going from point e to point e+1, or to point 0 for the
+     *         last edge) of the polygon given by coords and pointsCount
+     */
+    private static boolean crosses(double[] coords, int pointsCount, int e, double ptX, double ptY) {
+        int pi = 2 * e;
+        int vi = (e + 1 == pointsCount ? 0 : pi + 2);
+        double prevX = coords[pi], prevY = coords[pi + 1];
+        double x = coords[vi], y = coords[vi + 1];
+        if ((prevY > ptY) == (y > ptY)) {
+            // edge lies completely inside one of the two half spaces defined by the beam
+            return false;
+        }
+        double crossX = prevX + (x-prevX)*(ptY-prevY)/(y-prevY);
+        return crossX > ptX;
+    }
+
+    /**
+     * Acceleration structure for {@link PolygonObject#contains(Point2D)}: The
+     * polygon's y range is divided into equally high horizontal bands, and
+     * each band lists the edges whose y extent overlaps it. A point can then
+     * only be crossed by the edges of the band containing it. Stored as one
+     * array of edge indices, sorted by band, plus the start offset of each
+     * band in it.
+     * <p>
+     * The number of bands is chosen so that the table holds no more than
+     * {@link #MAX_ENTRIES_PER_EDGE} entries per edge on average, to bound
+     * memory for polygons with many edges that span a large part of the
+     * polygon's height. If even a single band would exceed that (all edges
+     * span nearly the whole height), if the bands hold more than half of the
+     * edges on average (so the table wouldn't be faster than testing all
+     * edges), or if the polygon has no height, the table isn't usable and
+     * contains() falls back to testing all edges.
+     */
+    private static final class EdgeTable {
+        private static final int MAX_ENTRIES_PER_EDGE = 8;
+
+        private final double minY;
+        private final double bandHeight;
+        private final int bandCount;
+        private final int[] bandStart;
+        private final int[] edges;
+
+        EdgeTable(double[] coords, int pointsCount) {
+            double minY = coords[1], maxY = minY;
+            for (int i = 1; i < pointsCount; i++) {
+                double y = coords[2 * i + 1];
+                if (y < minY) { minY = y; }
+                if (y > maxY) { maxY = y; }
+            }
+            this.minY = minY;
+            int bandCount = Math.max(1, pointsCount / 4);
+            int maxEntries = MAX_ENTRIES_PER_EDGE * pointsCount;
+            int[] counts = null;
+            int entryCount = -1;
+            if (maxY > minY) {
+                while (true) {
+                    counts = new int[bandCount];
+                    entryCount = countEntries(coords, pointsCount, minY, (maxY - minY) / bandCount, bandCount, counts, maxEntries);
+                    if (entryCount >= 0 || bandCount == 1) {
+                        break;
+                    }
+                    bandCount /= 2;
+                }
+            }
+            if (entryCount < 0 || 2L * entryCount > (long) bandCount * pointsCount) {
+                this.bandHeight = 0;
+                this.bandCount = 0;
+                this.bandStart = null;
+                this.edges = null;
+                return;
+            }
+            this.bandHeight = (maxY - minY) / bandCount;
+            this.bandCount = bandCount;
+            // counts[b] -> start offset of band b
+            int[] bandStart = new int[bandCount + 1];
+            for (int b = 0; b < bandCount; b++) {
+                bandStart[b + 1] = bandStart[b] + counts[b];
+            }
+            int[] fill = Arrays.copyOf(bandStart, bandCount);
+            int[] edges = new int[entryCount];
+            for (int e = 0; e < pointsCount; e++) {
+                int bLo = band(edgeMinY(coords, pointsCount, e)), bHi = band(edgeMaxY(coords, pointsCount, e));
+                for (int b = bLo; b <= bHi; b++) {
+                    edges[fill[b]++] = e;
+                }
+            }
+            this.bandStart = bandStart;
+            this.edges = edges;
+        }
+
+        /**
+         * Count the table entries per band (into counts) and overall.
+         * 
+         * @return overall number of entries, or -1 if it would exceed
+         *         maxEntries (counts is incomplete then)
+         */
+        private static int countEntries(double[] coords, int pointsCount, double minY, double bandHeight, int bandCount,
+                                        int[] counts, int maxEntries) {
+            int result = 0;
+            for (int e = 0; e < pointsCount; e++) {
+                int bLo = band(edgeMinY(coords, pointsCount, e), minY, bandHeight, bandCount);
+                int bHi = band(edgeMaxY(coords, pointsCount, e), minY, bandHeight, bandCount);
+                result += bHi - bLo + 1;
+                if (result > maxEntries) {
+                    return -1;
+                }
+                for (int b = bLo; b <= bHi; b++) {
+                    counts[b]++;
+                }
+            }
+            return result;
+        }
+
+        private static double edgeMinY(double[] coords, int pointsCount, int e) {
+            int vi = (e + 1 == pointsCount ? 0 : 2 * e + 2);
+            return Math.min(coords[2 * e + 1], coords[vi + 1]);
+        }
+
+        private static double edgeMaxY(double[] coords, int pointsCount, int e) {
+            int vi = (e + 1 == pointsCount ? 0 : 2 * e + 2);
+            return Math.max(coords[2 * e + 1], coords[vi + 1]);
+        }
+
+        private static int band(double y, double minY, double bandHeight, int bandCount) {
+            int b = (int) ((y - minY) / bandHeight);
+            return b < 0 ? 0 : (b >= bandCount ? bandCount - 1 : b);
+        }
+
+        private int band(double y) {
+            return band(y, minY, bandHeight, bandCount);
+        }
+
+        boolean isUsable() {
+            return null != edges;
+        }
+
+        int countCrossings(double[] coords, int pointsCount, double ptX, double ptY) {
+            int b = band(ptY);
+            int nCrosses = 0;
+            for (int i = bandStart[b], end = bandStart[b + 1]; i < end; i++) {
+                if (crosses(coords, pointsCount, edges[i], ptX, ptY)) {
+                    nCrosses++;
+                }
+            }
+            return nCrosses;
+        }
+    }
+
+    // Java serialization. Keep the serialized form of the times when the points
+    // were stored in an ArrayList<Point2D>, so existing serialized drawings can
+    // still be read.
+
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("points", ArrayList.class),
+        new ObjectStreamField("isClosed", Boolean.TYPE),
+        new ObjectStreamField("inInternalSetLocation", Boolean.TYPE)
+    };
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ArrayList<Point2D> points = new ArrayList<Point2D>(pointCount);
+        for (int i = 0; i < pointCount; i++) {
+            points.add(getPoint(i));
+        }
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("points", points);
+        fields.put("isClosed", isClosed);
+        fields.put("inInternalSetLocation", inInternalSetLocation);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        List<Point2D> points = (List<Point2D>) fields.get("points", null);
+        isClosed = fields.get("isClosed", true);
+        inInternalSetLocation = fields.get("inInternalSetLocation", false);
+        coords = new double[Math.max(16, null == points ? 0 : 2 * points.size())];
+        pointCount = 0;
+        if (null != points) {
+            for (Point2D pt : points) {
+                addCoords(pt.getX(), pt.getY());
+            }
+        }
+    }
+
     // provide for XML serializability via java.beans.XMLEncoder
 
     static {
@@ -237,8 +542,7 @@ public class PolygonObject extends DrawingObject {
             super.initialize(type, oldInstance, newInstance, out);
             PolygonObject target = (PolygonObject) oldInstance;
             for (int i = 0; i < target.getPointCount(); i++) {
-                Point2D pt = target.getPoint(i);
-                out.writeStatement(new Statement(target, "appendPoint", new Object[]{pt.getX(), pt.getY()}));
+                out.writeStatement(new Statement(target, "appendPoint", new Object[]{target.getX(i), target.getY(i)}));
             }
         }
     }
@@ -0,0 +1,425 @@
+package de.sofd.draw2d;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simple dynamic R-tree (Guttman's algorithm with quadratic split) that maps
+ * items to axis-aligned bounding rectangles and answers "which items' bounds
+ * intersect this point/rectangle" queries without looking at every item.
+ * <p>
+ * Items are compared by identity. Each item may be contained at most once;
+ * {@link #put(Object, Rectangle2D)} on an already contained item replaces its
+ * bounds. Bounds are treated as closed intervals, so zero-width or
+ * zero-height bounds (e.g. of horizontal or vertical lines) are found as well.
+ * <p>
+ * Used by {@link Drawing} as its spatial index. Not thread-safe.
+ *
+ * @author olaf
+ */
+final class RTree<T> {
+
+    private static final int MAX_ENTRIES = 16;
+    private static final int MIN_ENTRIES = 6;
+
+    /**
+     * A tree node. Entry i of the node has the bounds
+     * (minX[i],minY[i])--(maxX[i],maxY[i]) and the child children[i], which is
+     * an item (T) in leaf nodes and a Node otherwise. There's room for one
+     * more than MAX_ENTRIES entries so a node can overflow temporarily before
+     * it is split.
+     */
+    private static final class Node {
+        Node parent;
+        final boolean leaf;
+        int count;
+        final double[] minX = new double[MAX_ENTRIES + 1];
+        final double[] minY = new double[MAX_ENTRIES + 1];
+        final double[] maxX = new double[MAX_ENTRIES + 1];
+        final double[] maxY = new double[MAX_ENTRIES + 1];
+        final Object[] children = new Object[MAX_ENTRIES + 1];
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+
+        int indexOf(Object child) {
+            for (int i = 0; i < count; i++) {
+                if (children[i] == child) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private Node root = new Node(true);
+
+    /**
+     * the leaf node each item currently lives in. Used for O(log n) removal
+     * without having to search the tree for the item's (old) bounds.
+     */
+    private final Map<T, Node> leafOf = new IdentityHashMap<T, Node>();
+
+    public int size() {
+        return leafOf.size();
+    }
+
+    public boolean contains(T item) {
+        return leafOf.containsKey(item);
+    }
+
+    public void clear() {
+        root = new Node(true);
+        leafOf.clear();
+    }
+
+    /**
+     * Add item to the tree with the given bounds, or update its bounds if it
+     * was already contained.
+     *
+     * @param item
+     *            item
+     * @param bounds
+     *            bounds
+     */
+    public void put(T item, Rectangle2D bounds) {
+        put(item, bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+    }
+
+    public void put(T item, double x1, double y1, double x2, double y2) {
+        if (leafOf.containsKey(item)) {
+            remove(item);
+        }
+        Node leaf = chooseLeaf(x1, y1, x2, y2);
+        addEntry(leaf, x1, y1, x2, y2, item);
+        leafOf.put(item, leaf);
+        if (leaf.count > MAX_ENTRIES) {
+            split(leaf);
+        } else {
+            adjustUpwards(leaf);
+        }
+    }
+
+    /**
+     *
+     * @param item
+     *            item
+     * @return true if item was contained in the tree (and thus removed)
+     */
+    public boolean remove(T item) {
+        Node leaf = leafOf.remove(item);
+        if (null == leaf) {
+            return false;
+        }
+        removeEntryAt(leaf, leaf.indexOf(item));
+        condense(leaf);
+        return true;
+    }
+
+    /**
+     * Add to result all items whose bounds intersect the rectangle
+     * (x1,y1)--(x2,y2) (x1 &lt;= x2, y1 &lt;= y2). The order in which the
+     * items are added is undefined.
+     */
+    public void search(double x1, double y1, double x2, double y2, Collection<? super T> result) {
+        if (root.count == 0) {
+            return;
+        }
+        Node[] stack = new Node[16];
+        int sp = 0;
+        stack[sp++] = root;
+        while (sp > 0) {
+            Node node = stack[--sp];
+            for (int i = 0; i < node.count; i++) {
+                if (node.minX[i] <= x2 && node.maxX[i] >= x1 && node.minY[i] <= y2 && node.maxY[i] >= y1) {
+                    if (node.leaf) {
+                        @SuppressWarnings("unchecked")
+                        T item = (T) node.children[i];
+                        result.add(item);
+                    } else {
+                        if (sp == stack.length) {
+                            Node[] newStack = new Node[2 * sp];
+                            System.arraycopy(stack, 0, newStack, 0, sp);
+                            stack = newStack;
+                        }
+                        stack[sp++] = (Node) node.children[i];
+                    }
+                }
+            }
+        }
+    }
+
+    public void search(Rectangle2D rect, Collection<? super T> result) {
+        search(rect.getMinX(), rect.getMinY(), rect.getMaxX(), rect.getMaxY(), result);
+    }
+
+    // internals
+
+    private Node chooseLeaf(double x1, double y1, double x2, double y2) {
+        Node node = root;
+        while (!node.leaf) {
+            int best = 0;
+            double bestEnlargement = Double.POSITIVE_INFINITY;
+            double bestArea = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < node.count; i++) {
+                double area = area(node.minX[i], node.minY[i], node.maxX[i], node.maxY[i]);
+                double enlargement = area(Math.min(node.minX[i], x1), Math.min(node.minY[i], y1),
+                                          Math.max(node.maxX[i], x2), Math.max(node.maxY[i], y2)) - area;
+                if (enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea)) {
+                    best = i;
+                    bestEnlargement = enlargement;
+                    bestArea = area;
+                }
+            }
+            node = (Node) node.children[best];
+        }
+        return node;
+    }
+
+    private static double area(double x1, double y1, double x2, double y2) {
+        return (x2 - x1) * (y2 - y1);
+    }
+
+    private void addEntry(Node node, double x1, double y1, double x2, double y2, Object child) {
+        int i = node.count++;
+        node.minX[i] = x1;
+        node.minY[i] = y1;
+        node.maxX[i] = x2;
+        node.maxY[i] = y2;
+        node.children[i] = child;
+        if (!node.leaf) {
+            ((Node) child).parent = node;
+        }
+    }
+
+    private void removeEntryAt(Node node, int i) {
+        int last = --node.count;
+        node.minX[i] = node.minX[last];
+        node.minY[i] = node.minY[last];
+        node.maxX[i] = node.maxX[last];
+        node.maxY[i] = node.maxY[last];
+        node.children[i] = node.children[last];
+        node.children[last] = null;
+    }
+
+    /**
+     * Recompute the bounds of the entry representing node in node's parent,
+     * and so on up to the root, stopping early if some entry's bounds didn't
+     * change.
+     */
+    private void adjustUpwards(Node node) {
+        while (node.parent != null) {
+            Node parent = node.parent;
+            if (!updateEntryBounds(parent, parent.indexOf(node))) {
+                break;
+            }
+            node = parent;
+        }
+    }
+
+    /**
+     * Recompute the bounds of entry i of node (which must be an inner node)
+     * from the entries of its child node.
+     *
+     * @return true if the bounds changed
+     */
+    private boolean updateEntryBounds(Node node, int i) {
+        Node child = (Node) node.children[i];
+        double x1 = Double.POSITIVE_INFINITY, y1 = Double.POSITIVE_INFINITY;
+        double x2 = Double.NEGATIVE_INFINITY, y2 = Double.NEGATIVE_INFINITY;
+        for (int j = 0; j < child.count; j++) {
+            x1 = Math.min(x1, child.minX[j]);
+            y1 = Math.min(y1, child.minY[j]);
+            x2 = Math.max(x2, child.maxX[j]);
+            y2 = Math.max(y2, child.maxY[j]);
+        }
+        if (x1 == node.minX[i] && y1 == node.minY[i] && x2 == node.maxX[i] && y2 == node.maxY[i]) {
+            return false;
+        }
+        node.minX[i] = x1;
+        node.minY[i] = y1;
+        node.maxX[i] = x2;
+        node.maxY[i] = y2;
+        return true;
+    }
+
+    /**
+     * Split the overflowing node into itself and a new sibling (quadratic
+     * split), propagating splits upwards as necessary.
+     */
+    private void split(Node node) {
+        int n = node.count;
+        double[] minX = node.minX.clone(), minY = node.minY.clone(), maxX = node.maxX.clone(), maxY = node.maxY.clone();
+        Object[] children = node.children.clone();
+
+        // pick the two seeds that would waste the most area if put together
+        int seed1 = 0, seed2 = 1;
+        double worstWaste = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double waste = area(Math.min(minX[i], minX[j]), Math.min(minY[i], minY[j]),
+                                    Math.max(maxX[i], maxX[j]), Math.max(maxY[i], maxY[j]))
+                               - area(minX[i], minY[i], maxX[i], maxY[i])
+                               - area(minX[j], minY[j], maxX[j], maxY[j]);
+                if (waste > worstWaste) {
+                    worstWaste = waste;
+                    seed1 = i;
+                    seed2 = j;
+                }
+            }
+        }
+
+        Node sibling = new Node(node.leaf);
+        node.count = 0;
+        for (int i = 0; i < n; i++) {
+            node.children[i] = null;
+        }
+        addEntry(node, minX[seed1], minY[seed1], maxX[seed1], maxY[seed1], children[seed1]);
+        addEntry(sibling, minX[seed2], minY[seed2], maxX[seed2], maxY[seed2], children[seed2]);
+        double[] b1 = {minX[seed1], minY[seed1], maxX[seed1], maxY[seed1]};
+        double[] b2 = {minX[seed2], minY[seed2], maxX[seed2], maxY[seed2]};
+        boolean[] assigned = new boolean[n];
+        assigned[seed1] = assigned[seed2] = true;
+        int remaining = n - 2;
+
+        while (remaining > 0) {
+            Node target;
+            int next = -1;
+            if (node.count + remaining == MIN_ENTRIES) {
+                target = node;
+            } else if (sibling.count + remaining == MIN_ENTRIES) {
+                target = sibling;
+            } else {
+                // pick the entry with the strongest preference for one of the groups
+                double maxDiff = Double.NEGATIVE_INFINITY;
+                double bestD1 = 0, bestD2 = 0;
+                for (int i = 0; i < n; i++) {
+                    if (assigned[i]) {
+                        continue;
+                    }
+                    double d1 = enlargement(b1, minX[i], minY[i], maxX[i], maxY[i]);
+                    double d2 = enlargement(b2, minX[i], minY[i], maxX[i], maxY[i]);
+                    if (Math.abs(d1 - d2) > maxDiff) {
+                        maxDiff = Math.abs(d1 - d2);
+                        next = i;
+                        bestD1 = d1;
+                        bestD2 = d2;
+                    }
+                }
+                if (bestD1 != bestD2) {
+                    target = (bestD1 < bestD2 ? node : sibling);
+                } else {
+                    double a1 = area(b1[0], b1[1], b1[2], b1[3]);
+                    double a2 = area(b2[0], b2[1], b2[2], b2[3]);
+                    if (a1 != a2) {
+                        target = (a1 < a2 ? node : sibling);
+                    } else {
+                        target = (node.count <= sibling.count ? node : sibling);
+                    }
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                if (assigned[i] || (next != -1 && i != next)) {
+                    continue;
+                }
+                double[] b = (target == node ? b1 : b2);
+                addEntry(target, minX[i], minY[i], maxX[i], maxY[i], children[i]);
+                b[0] = Math.min(b[0], minX[i]);
+                b[1] = Math.min(b[1], minY[i]);
+                b[2] = Math.max(b[2], maxX[i]);
+                b[3] = Math.max(b[3], maxY[i]);
+                assigned[i] = true;
+                remaining--;
+            }
+        }
+
+        if (sibling.leaf) {
+            for (int i = 0; i < sibling.count; i++) {
+                @SuppressWarnings("unchecked")
+                T item = (T) sibling.children[i];
+                leafOf.put(item, sibling);
+            }
+        }
+
+        if (node == root) {
+            Node newRoot = new Node(false);
+            addEntry(newRoot, b1[0], b1[1], b1[2], b1[3], node);
+            addEntry(newRoot, b2[0], b2[1], b2[2], b2[3], sibling);
+            root = newRoot;
+        } else {
+            Node parent = node.parent;
+            updateEntryBounds(parent, parent.indexOf(node));
+            addEntry(parent, b2[0], b2[1], b2[2], b2[3], sibling);
+            if (parent.count > MAX_ENTRIES) {
+                split(parent);
+            } else {
+                adjustUpwards(parent);
+            }
+        }
+    }
+
+    private static double enlargement(double[] b, double x1, double y1, double x2, double y2) {
+        return area(Math.min(b[0], x1), Math.min(b[1], y1), Math.max(b[2], x2), Math.max(b[3], y2))
+               - area(b[0], b[1], b[2], b[3]);
+    }
+
+    /**
+     * Called after an entry was removed from leaf. Eliminates underflowing
+     * nodes on the way up to the root (re-inserting their items), adjusts the
+     * bounds of the remaining ones, and shortens the tree if possible.
+     */
+    private void condense(Node leaf) {
+        List<T> orphans = null;
+        List<double[]> orphanBounds = null;
+        Node node = leaf;
+        while (node != root) {
+            Node parent = node.parent;
+            int i = parent.indexOf(node);
+            if (node.count < MIN_ENTRIES) {
+                removeEntryAt(parent, i);
+                node.parent = null;
+                if (null == orphans) {
+                    orphans = new ArrayList<T>();
+                    orphanBounds = new ArrayList<double[]>();
+                }
+                collectItems(node, orphans, orphanBounds);
+            } else {
+                updateEntryBounds(parent, i);
+            }
+            node = parent;
+        }
+        while (!root.leaf && root.count == 1) {
+            root = (Node) root.children[0];
+            root.parent = null;
+        }
+        if (!root.leaf && root.count == 0) {
+            root = new Node(true);
+        }
+        if (null != orphans) {
+            for (int i = 0; i < orphans.size(); i++) {
+                double[] b = orphanBounds.get(i);
+                put(orphans.get(i), b[0], b[1], b[2], b[3]);
+            }
+        }
+    }
+
+    private void collectItems(Node node, List<T> items, List<double[]> bounds) {
+        for (int i = 0; i < node.count; i++) {
+            if (node.leaf) {
+                @SuppressWarnings("unchecked")
+                T item = (T) node.children[i];
+                leafOf.remove(item);
+                items.add(item);
+                bounds.add(new double[]{node.minX[i], node.minY[i], node.maxX[i], node.maxY[i]});
+            } else {
+                collectItems((Node) node.children[i], items, bounds);
+            }
+        }
+    }
+
+}
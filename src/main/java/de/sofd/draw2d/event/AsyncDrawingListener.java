@@ -0,0 +1,451 @@
+package de.sofd.draw2d.event;
+
+import java.util.ArrayDeque;
+import java.util.EventObject;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import de.sofd.draw2d.DrawingObject;
+import de.sofd.draw2d.Location;
+
+/**
+ * {@link DrawingListener} that passes the post-change events it receives on to
+ * another DrawingListener (the delegate) asynchronously, on an
+ * {@link Executor}. For listeners that may take a while to process an event
+ * (recalculating measurements, persisting or auditing changes) and don't need
+ * to reject changes, so they don't hold up the thread that changes the
+ * drawing (normally the UI thread):
+ * <pre>
+ * drawing.addDrawingListener(new AsyncDrawingListener(slowListener, executor));
+ * </pre>
+ * <p>
+ * This is a {@link PostChangeListener}, so it only receives post-change
+ * events (pre-change events passed to it directly are ignored), and the
+ * delegate can't reject changes. Listeners that need to do that must stay
+ * synchronous.
+ * <p>
+ * Events are queued and delivered to the delegate in the order they were
+ * received, one at a time (never concurrently, even if the executor has
+ * several threads). The queue is bounded; what happens when it is full is
+ * determined by the {@link OverflowPolicy}. If location change coalescing is
+ * enabled, a {@link DrawingObjectLocationChangeEvent} of an object whose most
+ * recently queued event is a location change event that is still waiting for
+ * delivery is merged into that one (the merged event has the earlier event's
+ * last location and the later event's new location), like
+ * {@link de.sofd.draw2d.Drawing#beginBatch()} does. So the delegate sees
+ * fewer intermediate locations during drags, but each object's events
+ * (including the drawing's add, move, remove and bulk change events for it)
+ * still arrive in their original order. More specific location events (e.g.
+ * {@link PolygonPointAddEvent}s) are never merged.
+ * <p>
+ * Everything the delegate needs from an event is captured when the event is
+ * queued: location events get copies of their locations, and
+ * {@link DrawingObjectAddOrMoveEvent}s are replaced by ones whose
+ * {@link DrawingObjectAddOrMoveEvent#getObject()} returns the object that was
+ * added or moved, rather than looking it up in the drawing by index. The
+ * delegate should only use the events; it must not read the drawing or its
+ * objects' state, since the drawing is not thread-safe and is being changed
+ * by other threads (normally the UI thread) while events are delivered.
+ * Exceptions and errors thrown by the delegate are passed to the delivering
+ * thread's {@link Thread.UncaughtExceptionHandler}; delivery continues with
+ * the next event.
+ *
+ * @author olaf
+ */
+public class AsyncDrawingListener implements DrawingListener, PostChangeListener {
+
+    /**
+     * What to do with an event that arrives while the queue is full.
+     */
+    public static enum OverflowPolicy {
+        /**
+         * Wait until the delegate has caught up and there is room in the
+         * queue. No events are lost. (Events that arrive on the delivering
+         * thread itself, i.e. caused by the delegate changing a drawing
+         * this listener listens to, are queued regardless of the capacity,
+         * as waiting would deadlock.)
+         */
+        BLOCK,
+        /**
+         * Drop the oldest queued event to make room for the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * Drop the new event.
+         */
+        DROP_NEWEST
+    }
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /**
+     * Add or move event whose object was resolved when it was queued.
+     */
+    private static class ResolvedAddOrMoveEvent extends DrawingObjectAddOrMoveEvent {
+        private static final long serialVersionUID = -2830561749357214022L;
+
+        private final DrawingObject object;
+
+        ResolvedAddOrMoveEvent(DrawingObjectAddOrMoveEvent e) {
+            super(e.getSource(), e.isBeforeChange(), e.isMoved() ? e.getOldIndex() : -1, e.getNewIndex());
+            this.object = e.getObject();
+        }
+
+        @Override
+        public DrawingObject getObject() {
+            return object;
+        }
+    }
+
+    private static class Entry {
+        EventObject event;
+
+        Entry(EventObject event) {
+            this.event = event;
+        }
+    }
+
+    private final DrawingListener delegate;
+    private final Executor executor;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final boolean coalescingLocationEvents;
+
+    // all guarded by this
+    private final ArrayDeque<Entry> queue = new ArrayDeque<Entry>();
+    // queued plain location events that later ones may still be merged into, by object
+    private final Map<DrawingObject, Entry> pendingLocationEntries = new IdentityHashMap<DrawingObject, Entry>();
+    private boolean drainScheduled = false;
+    private Thread drainThread;
+    private long receivedCount, deliveredCount, droppedCount, coalescedCount;
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Create a listener with a queue capacity of {@link #DEFAULT_CAPACITY},
+     * {@link OverflowPolicy#BLOCK} and location change coalescing enabled.
+     *
+     * @param delegate
+     *            delegate
+     * @param executor
+     *            executor
+     */
+    public AsyncDrawingListener(DrawingListener delegate, Executor executor) {
+        this(delegate, executor, DEFAULT_CAPACITY, OverflowPolicy.BLOCK, true);
+    }
+
+    /**
+     *
+     * @param delegate
+     *            the listener to pass the events on to
+     * @param executor
+     *            executor to deliver the events on
+     * @param capacity
+     *            maximum number of queued events
+     * @param overflowPolicy
+     *            what to do with events that arrive while the queue is full
+     * @param coalescingLocationEvents
+     *            whether to merge location change events of the same object
+     *            while they're queued
+     */
+    public AsyncDrawingListener(DrawingListener delegate, Executor executor, int capacity,
+                                OverflowPolicy overflowPolicy, boolean coalescingLocationEvents) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.coalescingLocationEvents = coalescingLocationEvents;
+    }
+
+    public DrawingListener getDelegate() {
+        return delegate;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public boolean isCoalescingLocationEvents() {
+        return coalescingLocationEvents;
+    }
+
+    @Override
+    public void onDrawingEvent(EventObject e) {
+        if (isBeforeChange(e)) {
+            return;
+        }
+        boolean scheduleDrain;
+        synchronized (this) {
+            receivedCount++;
+            if (coalesce(e)) {
+                return;
+            }
+            if (queue.size() >= capacity && Thread.currentThread() != drainThread) {
+                switch (overflowPolicy) {
+                case BLOCK:
+                    boolean interrupted = false;
+                    // (stop waiting if no drain is scheduled anymore, e.g. because
+                    // the executor rejected it; scheduling one below will then throw)
+                    while (queue.size() >= capacity && drainScheduled) {
+                        try {
+                            wait();
+                        } catch (InterruptedException ex) {
+                            interrupted = true;
+                        }
+                    }
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                    // the event may be mergeable now that we waited
+                    if (coalesce(e)) {
+                        return;
+                    }
+                    break;
+                case DROP_OLDEST:
+                    forget(queue.poll());
+                    droppedCount++;
+                    break;
+                case DROP_NEWEST:
+                    droppedCount++;
+                    return;
+                }
+            }
+            Entry entry = new Entry(snapshot(e));
+            queue.add(entry);
+            if (coalescingLocationEvents) {
+                if (e.getClass() == DrawingObjectLocationChangeEvent.class) {
+                    pendingLocationEntries.put(((DrawingObjectLocationChangeEvent) e).getSource(), entry);
+                } else {
+                    // later location changes of the object(s) e refers to must be
+                    // delivered after e, so they can't be merged into earlier ones
+                    forgetPendingLocationEntries(entry.event);
+                }
+            }
+            scheduleDrain = !drainScheduled;
+            drainScheduled = true;
+        }
+        if (scheduleDrain) {
+            try {
+                executor.execute(drainTask);
+            } catch (RuntimeException ex) {
+                synchronized (this) {
+                    drainScheduled = false;
+                    notifyAll();
+                }
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * If e is a plain location change event that can be merged into a queued
+     * one, do that. Caller must hold the lock.
+     */
+    private boolean coalesce(EventObject e) {
+        if (!coalescingLocationEvents || e.getClass() != DrawingObjectLocationChangeEvent.class) {
+            return false;
+        }
+        DrawingObjectLocationChangeEvent lce = (DrawingObjectLocationChangeEvent) e;
+        Entry pending = pendingLocationEntries.get(lce.getSource());
+        if (null == pending) {
+            return false;
+        }
+        DrawingObjectLocationChangeEvent pendingEvent = (DrawingObjectLocationChangeEvent) pending.event;
+        pending.event = new DrawingObjectLocationChangeEvent(lce.getSource(), false,
+                                                             pendingEvent.getLastLocation(),
+                                                             new Location(lce.getNewLocation()));
+        coalescedCount++;
+        return true;
+    }
+
+    /**
+     * Caller must hold the lock.
+     */
+    private void forget(Entry entry) {
+        if (null != entry && entry.event instanceof DrawingObjectLocationChangeEvent) {
+            DrawingObject drobj = ((DrawingObjectLocationChangeEvent) entry.event).getSource();
+            if (pendingLocationEntries.get(drobj) == entry) {
+                pendingLocationEntries.remove(drobj);
+            }
+        }
+    }
+
+    /**
+     * Remove the pending location entries of all objects that e refers to.
+     * Caller must hold the lock.
+     */
+    private void forgetPendingLocationEntries(EventObject e) {
+        if (pendingLocationEntries.isEmpty()) {
+            return;
+        }
+        if (e instanceof DrawingObjectEvent) {
+            pendingLocationEntries.remove(((DrawingObjectEvent) e).getSource());
+        } else if (e instanceof DrawingObjectRemoveEvent) {
+            pendingLocationEntries.remove(((DrawingObjectRemoveEvent) e).getObject());
+        } else if (e instanceof DrawingObjectAddOrMoveEvent) {
+            pendingLocationEntries.remove(((DrawingObjectAddOrMoveEvent) e).getObject());
+        } else if (e instanceof DrawingObjectBulkChangeEvent) {
+            DrawingObjectBulkChangeEvent bce = (DrawingObjectBulkChangeEvent) e;
+            for (DrawingObject drobj : bce.getRemovedObjects()) {
+                pendingLocationEntries.remove(drobj);
+            }
+            for (DrawingObject drobj : bce.getAddedObjects()) {
+                pendingLocationEntries.remove(drobj);
+            }
+        }
+    }
+
+    private static EventObject snapshot(EventObject e) {
+        if (e.getClass() == DrawingObjectLocationChangeEvent.class) {
+            DrawingObjectLocationChangeEvent lce = (DrawingObjectLocationChangeEvent) e;
+            return new DrawingObjectLocationChangeEvent(lce.getSource(), false,
+                                                        new Location(lce.getLastLocation()),
+                                                        new Location(lce.getNewLocation()));
+        }
+        if (e instanceof DrawingObjectAddOrMoveEvent) {
+            // look the object up now, while the index is still valid
+            return new ResolvedAddOrMoveEvent((DrawingObjectAddOrMoveEvent) e);
+        }
+        return e;
+    }
+
+    private static boolean isBeforeChange(EventObject e) {
+        if (e instanceof DrawingObjectEvent) {
+            return ((DrawingObjectEvent) e).isBeforeChange();
+        }
+        return e instanceof DrawingEvent && ((DrawingEvent) e).isBeforeChange();
+    }
+
+    private void drain() {
+        synchronized (this) {
+            drainThread = Thread.currentThread();
+        }
+        try {
+            while (true) {
+                EventObject e;
+                synchronized (this) {
+                    Entry entry = queue.poll();
+                    if (null == entry) {
+                        return;
+                    }
+                    forget(entry);
+                    notifyAll();
+                    e = entry.event;
+                }
+                try {
+                    delegate.onDrawingEvent(e);
+                } catch (Throwable ex) {
+                    Thread t = Thread.currentThread();
+                    t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+                }
+                synchronized (this) {
+                    deliveredCount++;
+                }
+            }
+        } finally {
+            // also reached if the uncaught exception handler throws; events
+            // still queued then are delivered by a new drain task
+            boolean rescheduleDrain;
+            synchronized (this) {
+                drainThread = null;
+                rescheduleDrain = !queue.isEmpty();
+                drainScheduled = rescheduleDrain;
+                notifyAll();
+            }
+            if (rescheduleDrain) {
+                try {
+                    executor.execute(drainTask);
+                } catch (RuntimeException ex) {
+                    synchronized (this) {
+                        drainScheduled = false;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait until all queued events have been delivered.
+     *
+     * @param timeout
+     *            maximum time to wait
+     * @param unit
+     *            unit of timeout
+     * @return false if the timeout elapsed before that
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public synchronized boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (drainScheduled) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    // statistics
+
+    /**
+     *
+     * @return number of events currently waiting for delivery
+     */
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     *
+     * @return number of post-change events received
+     */
+    public synchronized long getReceivedCount() {
+        return receivedCount;
+    }
+
+    /**
+     *
+     * @return number of events delivered to the delegate
+     */
+    public synchronized long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     *
+     * @return number of events dropped because the queue was full
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     *
+     * @return number of location change events merged into queued ones
+     */
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    public synchronized void resetStatistics() {
+        receivedCount = deliveredCount = droppedCount = coalescedCount = 0;
+    }
+
+}
@@ -1,5 +1,13 @@
 package de.sofd.draw2d.event;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  *
  * @author olaf
@@ -22,19 +30,92 @@ public class ChangeRejectedException extends RuntimeException {
     }
 
 
-    private static final ThreadLocal<ChangeRejectedException> lastException
-            = new ThreadLocal<ChangeRejectedException>();
+    /**
+     * Per-thread slot for the last exception. Its {@link HolderRef} is
+     * enqueued once the thread has died and the holder has been collected, so
+     * the holders of dead threads can be subtracted from {@link #setCount}.
+     */
+    private static final class Holder {
+        ChangeRejectedException exception;
+        final HolderRef ref = new HolderRef(this);
+    }
+
+    private static final class HolderRef extends WeakReference<Holder> {
+        // whether the holder's exception is non-null, i.e. it is counted in setCount
+        volatile boolean counted;
+
+        HolderRef(Holder holder) {
+            super(holder, deadHolders);
+        }
+    }
+
+    private static final ThreadLocal<Holder> lastException = new ThreadLocal<Holder>();
+
+    private static final ReferenceQueue<Holder> deadHolders = new ReferenceQueue<Holder>();
+
+    // keeps the HolderRefs reachable until they've been enqueued and processed
+    private static final Set<HolderRef> holderRefs = Collections.synchronizedSet(new HashSet<HolderRef>());
+
+    /**
+     * Number of threads whose last exception is currently non-null. Lets
+     * {@link #resetLastException()}, which is called after every successfully
+     * fired event, and {@link #getLastException()} return without touching
+     * the ThreadLocal in the common case that no change has been rejected
+     * recently. Threads that die with a non-null last exception are
+     * subtracted once their holder has been garbage collected.
+     */
+    private static final AtomicInteger setCount = new AtomicInteger();
 
     public static void setLastException(ChangeRejectedException e) {
-        lastException.set(e);
+        if (null == e) {
+            resetLastException();
+            return;
+        }
+        expungeDeadHolders();
+        Holder holder = lastException.get();
+        if (null == holder) {
+            holder = new Holder();
+            holderRefs.add(holder.ref);
+            lastException.set(holder);
+        }
+        if (!holder.ref.counted) {
+            holder.ref.counted = true;
+            setCount.incrementAndGet();
+        }
+        holder.exception = e;
     }
 
     public static ChangeRejectedException getLastException() {
-        return lastException.get();
+        if (0 == setCount.get()) {
+            return null;
+        }
+        Holder holder = lastException.get();
+        return null == holder ? null : holder.exception;
     }
 
     public static void resetLastException() {
-        lastException.set(null);
+        if (0 == setCount.get()) {
+            return;
+        }
+        expungeDeadHolders();
+        Holder holder = lastException.get();
+        if (null != holder && holder.ref.counted) {
+            holder.exception = null;
+            holder.ref.counted = false;
+            setCount.decrementAndGet();
+        }
+    }
+
+    private static void expungeDeadHolders() {
+        Reference<? extends Holder> ref;
+        while (null != (ref = deadHolders.poll())) {
+            HolderRef holderRef = (HolderRef) ref;
+            holderRefs.remove(holderRef);
+            if (holderRef.counted) {
+                holderRef.counted = false;
+                setCount.decrementAndGet();
+            }
+        }
     }
 
 }
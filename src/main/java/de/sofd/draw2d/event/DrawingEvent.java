@@ -16,5 +16,21 @@ public class DrawingEvent extends EventObject {
     public Drawing getSource() {
         return (Drawing) super.getSource();
     }
+
+    /**
+     * 
+     * @return true if this event is fired before the change it describes
+     *         takes place (so listeners may still reject the change by
+     *         throwing a {@link ChangeRejectedException}). This base class
+     *         returns false; subclasses that have pre-change variants
+     *         override this.
+     */
+    public boolean isBeforeChange() {
+        return false;
+    }
+
+    public boolean isAfterChange() {
+        return !isBeforeChange();
+    }
     
 }
@@ -0,0 +1,77 @@
+package de.sofd.draw2d.event;
+
+import java.util.Collections;
+import java.util.List;
+
+import de.sofd.draw2d.Drawing;
+import de.sofd.draw2d.DrawingObject;
+
+/**
+ * Event indicating that a whole set of {@link DrawingObject}s is to be or has
+ * been removed from and/or added to a {@link Drawing} in one go (see
+ * {@link Drawing#addDrawingObjects(java.util.Collection)},
+ * {@link Drawing#removeDrawingObjects(java.util.Collection)} and
+ * {@link Drawing#setObjects(List)}). Fired instead of the individual
+ * {@link DrawingObjectRemoveEvent}s and {@link DrawingObjectAddOrMoveEvent}s.
+ * <p>
+ * The removal takes place before the addition, and the added objects end up
+ * at the top of the z order, in the order of {@link #getAddedObjects()}. An
+ * object may be both removed and added by the same change.
+ *
+ * @author olaf
+ */
+public class DrawingObjectBulkChangeEvent extends DrawingEvent {
+
+    private static final long serialVersionUID = -5734261810924485562L;
+
+    private final boolean isBeforeChange;
+    private final List<DrawingObject> removedObjects;
+    private final List<DrawingObject> addedObjects;
+
+    protected DrawingObjectBulkChangeEvent(Drawing source,
+                                           boolean isBeforeChange,
+                                           List<DrawingObject> removedObjects,
+                                           List<DrawingObject> addedObjects) {
+        super(source);
+        this.isBeforeChange = isBeforeChange;
+        this.removedObjects = Collections.unmodifiableList(removedObjects);
+        this.addedObjects = Collections.unmodifiableList(addedObjects);
+    }
+
+    public boolean isBeforeChange() {
+        return isBeforeChange;
+    }
+
+    public boolean isAfterChange() {
+        return !isBeforeChange;
+    }
+
+    /**
+     *
+     * @return the objects to be removed or having been removed, in the z
+     *         order they had before the change (backmost object first)
+     */
+    public List<DrawingObject> getRemovedObjects() {
+        return removedObjects;
+    }
+
+    /**
+     *
+     * @return the objects to be added or having been added, backmost object
+     *         first
+     */
+    public List<DrawingObject> getAddedObjects() {
+        return addedObjects;
+    }
+
+    // public "constructors"
+
+    public static DrawingObjectBulkChangeEvent newBeforeChangeEvent(Drawing source, List<DrawingObject> removedObjects, List<DrawingObject> addedObjects) {
+        return new DrawingObjectBulkChangeEvent(source, true, removedObjects, addedObjects);
+    }
+
+    public static DrawingObjectBulkChangeEvent newAfterChangeEvent(Drawing source, List<DrawingObject> removedObjects, List<DrawingObject> addedObjects) {
+        return new DrawingObjectBulkChangeEvent(source, false, removedObjects, addedObjects);
+    }
+
+}
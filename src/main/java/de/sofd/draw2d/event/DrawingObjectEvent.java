@@ -22,5 +22,22 @@ public class DrawingObjectEvent extends EventObject {
     public DrawingObject getSource() {
         return (DrawingObject) super.getSource();
     }
+
+    /**
+     * 
+     * @return true if this event is fired before the change it describes
+     *         takes place (so listeners may still reject the change by
+     *         throwing a {@link ChangeRejectedException}). This base class
+     *         returns false, i.e. a plain DrawingObjectEvent is a post-change
+     *         "something has changed" notification. Subclasses that have
+     *         pre-change variants override this.
+     */
+    public boolean isBeforeChange() {
+        return false;
+    }
+
+    public boolean isAfterChange() {
+        return !isBeforeChange();
+    }
     
 }
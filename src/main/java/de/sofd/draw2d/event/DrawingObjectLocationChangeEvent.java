@@ -6,6 +6,16 @@ import de.sofd.draw2d.Location;
 /**
  * Event indicating that a {@link DrawingObject}'s 2D {@link Location}
  * (position, dimensions, or both) has changed.
+ * <p>
+ * Objects that change their location at a high rate may fire reusable
+ * instances of this class (see {@link #newReusableEvent(DrawingObject)} and
+ * {@link DrawingObject#setReusingLocationChangeEvents(boolean)}). Such an
+ * event, and the locations it refers to, are only valid while it is being
+ * fired; listeners that keep the event or its locations past the
+ * {@link DrawingObjectListener#onDrawingObjectEvent(DrawingObjectEvent)} /
+ * {@link DrawingListener#onDrawingEvent(java.util.EventObject)} call must
+ * keep a copy ({@link #toImmutable()}). Listeners must never modify the
+ * locations.
  * 
  * @author Olaf Klischat
  */
@@ -13,9 +23,11 @@ public class DrawingObjectLocationChangeEvent extends DrawingObjectEvent {
 
     private static final long serialVersionUID = 6826706696411318409L;
 
-    private final boolean isBeforeChange;
-    private final Location lastLocation;
-    private final Location newLocation;
+    // fields can't be final because reusable instances are reinitialized
+    private /*final*/ boolean isBeforeChange;
+    private /*final*/ Location lastLocation;
+    private /*final*/ Location newLocation;
+    private transient boolean reusable;
     
     public DrawingObjectLocationChangeEvent(DrawingObject source,
                                             boolean isBeforeChange,
@@ -27,6 +39,76 @@ public class DrawingObjectLocationChangeEvent extends DrawingObjectEvent {
         this.newLocation = newLocation;
     }
 
+    /**
+     * Create an event that may be reinitialized with
+     * {@link #reinit(DrawingObject, boolean, Location, Location)} and fired
+     * again after it has been fired, so firing location changes needn't
+     * allocate anything. Only the code that fires it may reinitialize it.
+     * 
+     * @param source
+     *            initial source
+     * @return the event
+     */
+    public static DrawingObjectLocationChangeEvent newReusableEvent(DrawingObject source) {
+        DrawingObjectLocationChangeEvent result = new DrawingObjectLocationChangeEvent(source, false, null, null);
+        result.reusable = true;
+        return result;
+    }
+
+    /**
+     * Reinitialize a reusable event.
+     * 
+     * @param source
+     *            new source. May be null to release the references held by
+     *            an event that isn't currently used
+     * @param isBeforeChange
+     *            isBeforeChange
+     * @param lastLocation
+     *            lastLocation
+     * @param newLocation
+     *            newLocation
+     * @return this
+     * @throws IllegalStateException
+     *             if this event wasn't created by
+     *             {@link #newReusableEvent(DrawingObject)}
+     */
+    public DrawingObjectLocationChangeEvent reinit(DrawingObject source,
+                                                   boolean isBeforeChange,
+                                                   Location lastLocation,
+                                                   Location newLocation) {
+        if (!reusable) {
+            throw new IllegalStateException("not a reusable event");
+        }
+        this.source = source;
+        this.isBeforeChange = isBeforeChange;
+        this.lastLocation = lastLocation;
+        this.newLocation = newLocation;
+        return this;
+    }
+
+    /**
+     * 
+     * @return whether this event was created by
+     *         {@link #newReusableEvent(DrawingObject)}, i.e. may change after
+     *         it has been fired
+     */
+    public boolean isReusable() {
+        return reusable;
+    }
+
+    /**
+     * 
+     * @return this event if it isn't {@link #isReusable() reusable}, otherwise
+     *         a non-reusable copy of it (with copies of its locations)
+     */
+    public DrawingObjectLocationChangeEvent toImmutable() {
+        if (!reusable) {
+            return this;
+        }
+        return new DrawingObjectLocationChangeEvent(getSource(), isBeforeChange,
+                                                    new Location(lastLocation), new Location(newLocation));
+    }
+
     public boolean isBeforeChange() {
         return isBeforeChange;
     }
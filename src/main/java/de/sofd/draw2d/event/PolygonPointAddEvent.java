@@ -1,54 +1,145 @@
 package de.sofd.draw2d.event;
 
 import java.awt.geom.Point2D;
+import java.util.Arrays;
 
+import de.sofd.draw2d.Location;
 import de.sofd.draw2d.PolygonObject;
 
-public class PolygonPointAddEvent extends DrawingObjectEvent {
+/**
+ * Event indicating that one or more points are appended to a
+ * {@link PolygonObject}.
+ * <p>
+ * Appending points may grow the polygon's bounding box, so this is a
+ * {@link DrawingObjectLocationChangeEvent} as well, carrying the polygon's
+ * location before and after the points were added (both are equal if the
+ * location doesn't change). No separate location change events are fired for
+ * the append.
+ *
+ * @author Olaf Klischat
+ */
+public class PolygonPointAddEvent extends DrawingObjectLocationChangeEvent {
 
-    private static final long serialVersionUID = 5073507056352253489L;
+    private static final long serialVersionUID = 8778066372977019183L;
 
-    private final boolean isBeforeChange;
     private final int pointIndex;
-    private final Point2D newPoint;
+    private final int addedPointCount;
+    /**
+     * coordinates of the added points, x and y interleaved
+     */
+    private final double[] newCoords;
 
+    /**
+     * Event for a single point appended to source. The locations before and
+     * after the change are computed from source's current location, so this
+     * must be called before the point is actually appended.
+     *
+     * @param source
+     *            source
+     * @param isBeforeChange
+     *            isBeforeChange
+     * @param pointIndex
+     *            index of the added point
+     * @param newPoint
+     *            the added point. Copied.
+     */
     public PolygonPointAddEvent(PolygonObject source, boolean isBeforeChange, int pointIndex, Point2D newPoint) {
-        super(source);
-        this.isBeforeChange = isBeforeChange;
+        this(source, isBeforeChange, pointIndex, new double[]{newPoint.getX(), newPoint.getY()}, 1,
+             source.getLocation(), source.getLocationIncluding(newPoint.getX(), newPoint.getY()));
+    }
+
+    /**
+     *
+     * @param source
+     *            source
+     * @param isBeforeChange
+     *            isBeforeChange
+     * @param pointIndex
+     *            index of the first added point
+     * @param newCoords
+     *            coordinates of the added points, x and y interleaved. Copied.
+     * @param addedPointCount
+     *            number of added points
+     * @param lastLocation
+     *            location of the polygon before the points were added
+     * @param newLocation
+     *            location of the polygon after the points were added
+     */
+    public PolygonPointAddEvent(PolygonObject source, boolean isBeforeChange, int pointIndex,
+                                double[] newCoords, int addedPointCount,
+                                Location lastLocation, Location newLocation) {
+        super(source, isBeforeChange, lastLocation, newLocation);
         this.pointIndex = pointIndex;
-        this.newPoint = new Point2D.Double(newPoint.getX(), newPoint.getY());
+        this.addedPointCount = addedPointCount;
+        this.newCoords = Arrays.copyOf(newCoords, 2 * addedPointCount);
     }
-    
+
     @Override
     public PolygonObject getSource() {
         return (PolygonObject) super.getSource();
     }
 
-    public boolean isBeforeChange() {
-        return isBeforeChange;
+    /**
+     *
+     * @return index of the (first) added point
+     */
+    public int getPointIndex() {
+        return pointIndex;
     }
 
-    public boolean isAfterChange() {
-        return !isBeforeChange;
+    public int getAddedPointCount() {
+        return addedPointCount;
     }
 
-    public int getPointIndex() {
-        return pointIndex;
+    /**
+     *
+     * @return the (first) added point
+     */
+    public Point2D getNewPoint() {
+        return getNewPoint(0);
     }
 
-    public Point2D getNewPoint() {
-        return newPoint;
+    /**
+     *
+     * @param i
+     *            i
+     * @return the i'th added point, i.e. the one at index
+     *         {@link #getPointIndex()} + i in the polygon
+     */
+    public Point2D getNewPoint(int i) {
+        if (i < 0 || i >= addedPointCount) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + addedPointCount);
+        }
+        return new Point2D.Double(newCoords[2 * i], newCoords[2 * i + 1]);
     }
-    
+
 
     // public "constructors"
 
+    /**
+     * See {@link #PolygonPointAddEvent(PolygonObject, boolean, int, Point2D)};
+     * must be called before the point is appended.
+     */
     public static PolygonPointAddEvent newBeforeChangeEvent(PolygonObject source, int pointIndex, Point2D newPoint) {
         return new PolygonPointAddEvent(source, true, pointIndex, newPoint);
     }
 
+    /**
+     * See {@link #PolygonPointAddEvent(PolygonObject, boolean, int, Point2D)};
+     * must be called before the point is appended.
+     */
     public static PolygonPointAddEvent newAfterChangeEvent(PolygonObject source, int pointIndex, Point2D newPoint) {
         return new PolygonPointAddEvent(source, false, pointIndex, newPoint);
     }
-    
+
+    public static PolygonPointAddEvent newBeforeChangeEvent(PolygonObject source, int pointIndex, double[] newCoords, int addedPointCount,
+                                                            Location lastLocation, Location newLocation) {
+        return new PolygonPointAddEvent(source, true, pointIndex, newCoords, addedPointCount, lastLocation, newLocation);
+    }
+
+    public static PolygonPointAddEvent newAfterChangeEvent(PolygonObject source, int pointIndex, double[] newCoords, int addedPointCount,
+                                                           Location lastLocation, Location newLocation) {
+        return new PolygonPointAddEvent(source, false, pointIndex, newCoords, addedPointCount, lastLocation, newLocation);
+    }
+
 }
@@ -0,0 +1,22 @@
+package de.sofd.draw2d.event;
+
+/**
+ * Marker interface for {@link DrawingListener}s and
+ * {@link DrawingObjectListener}s that only observe changes after they have
+ * happened, and thus never reject a change. Listeners implementing this are
+ * only sent post-change events (and events that have no pre-change variant,
+ * like plain {@link DrawingObjectEvent}s); pre-change events are never
+ * delivered to them.
+ * <p>
+ * If none of the listeners that would receive a pre-change event of a
+ * {@link de.sofd.draw2d.DrawingObject} -- those of the object itself and
+ * those of the {@link de.sofd.draw2d.Drawing} it is part of -- can reject it,
+ * the object doesn't even create the event (see
+ * {@link de.sofd.draw2d.DrawingObject#canSkipBeforeChangeEvent(Class)}), so
+ * changes of objects that only have post-change listeners are cheaper.
+ *
+ * @author olaf
+ */
+public interface PostChangeListener {
+
+}
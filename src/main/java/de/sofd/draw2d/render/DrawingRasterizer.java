@@ -0,0 +1,459 @@
+package de.sofd.draw2d.render;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import de.sofd.draw2d.Drawing;
+import de.sofd.draw2d.viewer.DrawingViewer;
+import de.sofd.draw2d.viewer.adapters.DefaultObjectViewerAdapterFactory;
+import de.sofd.draw2d.viewer.adapters.ObjectViewerAdapterFactory;
+import de.sofd.draw2d.viewer.gc.GC;
+
+/**
+ * Headless renderer for {@link Drawing}s, for producing images of drawings
+ * without any UI, e.g. on a server. Each drawing is rendered by a temporary
+ * {@link DrawingViewer} (in {@link DrawingViewer.RenderingMode#DIRECT} mode,
+ * with nothing selected) with a given object-to-display transformation into
+ * an image of a given size, which is returned as PNG data (
+ * {@link #renderPng(Request)}) or as raw ARGB pixels (
+ * {@link #renderArgb(Request)}).
+ * <p>
+ * Requests are processed concurrently on a fixed pool of daemon threads (see
+ * {@link #DrawingRasterizer(int)}); {@link #submitPng(Request)} /
+ * {@link #submitArgb(Request)} return immediately, the list variants render
+ * many drawings and wait for all of them. Each thread keeps its image buffer
+ * and reuses it for all requests that fit into it, so rendering many
+ * thumbnails of the same size doesn't allocate a new image per drawing.
+ * <p>
+ * The drawings must not be modified while they're being rendered. The same
+ * drawing may be rendered by several requests concurrently.
+ * <p>
+ * The rasterizer counts the drawings it has rendered and the time spent on
+ * them (see {@link #getRenderedCount()}, {@link #getMillisPerDrawing()},
+ * {@link #getDrawingsPerSecond()}). Call {@link #shutdown()} when done.
+ *
+ * @author olaf
+ */
+public class DrawingRasterizer {
+
+    /**
+     * A drawing to render, together with the transformation and size to
+     * render it with. Immutable.
+     */
+    public static class Request {
+        private final Drawing drawing;
+        private final AffineTransform transform;
+        private final int width, height;
+
+        /**
+         *
+         * @param drawing
+         *            the drawing
+         * @param transform
+         *            object-to-display transformation, i.e. from drawing
+         *            coordinates to the pixel coordinates of the output image.
+         *            Copied.
+         * @param width
+         *            width of the output image
+         * @param height
+         *            height of the output image
+         */
+        public Request(Drawing drawing, AffineTransform transform, int width, int height) {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("invalid output size: " + width + "x" + height);
+            }
+            this.drawing = drawing;
+            this.transform = new AffineTransform(transform);
+            this.width = width;
+            this.height = height;
+        }
+
+        public Drawing getDrawing() {
+            return drawing;
+        }
+
+        public AffineTransform getTransform() {
+            return new AffineTransform(transform);
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final int threadCount;
+    private final ObjectViewerAdapterFactory viewerAdapterFactory;
+
+    private final ThreadLocal<BufferedImage> imageBuffer = new ThreadLocal<BufferedImage>();
+
+    private volatile Color background;
+    private volatile boolean antialiasing = true;
+
+    // statistics
+    private long renderedCount, renderNanos, firstStartTime, lastEndTime;
+
+    /**
+     * Create a rasterizer with the given number of rendering threads, using
+     * the {@link DefaultObjectViewerAdapterFactory}.
+     *
+     * @param threadCount
+     *            threadCount
+     */
+    public DrawingRasterizer(int threadCount) {
+        this(threadCount, new DefaultObjectViewerAdapterFactory());
+    }
+
+    /**
+     *
+     * @param threadCount
+     *            number of rendering threads
+     * @param viewerAdapterFactory
+     *            adapter factory for the viewers that render the drawings.
+     *            Must be usable from several threads concurrently.
+     */
+    public DrawingRasterizer(int threadCount, ObjectViewerAdapterFactory viewerAdapterFactory) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("invalid thread count: " + threadCount);
+        }
+        this.threadCount = threadCount;
+        this.viewerAdapterFactory = viewerAdapterFactory;
+        this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "draw2d rasterizer " + threadCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public Color getBackground() {
+        return background;
+    }
+
+    /**
+     *
+     * @param background
+     *            color to fill the images with before the drawing is painted.
+     *            null (the default) means transparent.
+     */
+    public void setBackground(Color background) {
+        this.background = background;
+    }
+
+    public boolean isAntialiasing() {
+        return antialiasing;
+    }
+
+    /**
+     *
+     * @param antialiasing
+     *            whether to render with antialiasing. Default true.
+     */
+    public void setAntialiasing(boolean antialiasing) {
+        this.antialiasing = antialiasing;
+    }
+
+    /**
+     * Render a drawing asynchronously.
+     *
+     * @param request
+     *            request
+     * @return future for the rendered image, as PNG data
+     */
+    public Future<byte[]> submitPng(final Request request) {
+        return executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                return toPng(render(request), request);
+            }
+        });
+    }
+
+    /**
+     * Render a drawing asynchronously.
+     *
+     * @param request
+     *            request
+     * @return future for the rendered image, as ARGB pixels (
+     *         {@link BufferedImage#TYPE_INT_ARGB}, not premultiplied), row
+     *         by row
+     */
+    public Future<int[]> submitArgb(final Request request) {
+        return executor.submit(new Callable<int[]>() {
+            @Override
+            public int[] call() {
+                return toArgb(render(request), request);
+            }
+        });
+    }
+
+    /**
+     * Render a drawing and wait for the result.
+     *
+     * @param request
+     *            request
+     * @return the rendered image as PNG data
+     * @throws IOException
+     *             if the PNG encoding failed
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public byte[] renderPng(Request request) throws IOException, InterruptedException {
+        return getResult(submitPng(request));
+    }
+
+    /**
+     * Render a drawing and wait for the result.
+     *
+     * @param request
+     *            request
+     * @return the rendered image as ARGB pixels (see
+     *         {@link #submitArgb(Request)})
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public int[] renderArgb(Request request) throws InterruptedException {
+        try {
+            return getResult(submitArgb(request));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);  // can't happen
+        }
+    }
+
+    /**
+     * Render many drawings concurrently and wait for all of them.
+     *
+     * @param requests
+     *            requests
+     * @return the rendered images as PNG data, in the order of the requests
+     * @throws IOException
+     *             if the PNG encoding failed
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public List<byte[]> renderPng(List<Request> requests) throws IOException, InterruptedException {
+        List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>(requests.size());
+        for (Request request : requests) {
+            futures.add(submitPng(request));
+        }
+        return getResults(futures);
+    }
+
+    /**
+     * Render many drawings concurrently and wait for all of them.
+     *
+     * @param requests
+     *            requests
+     * @return the rendered images as ARGB pixels (see
+     *         {@link #submitArgb(Request)}), in the order of the requests
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public List<int[]> renderArgb(List<Request> requests) throws InterruptedException {
+        List<Future<int[]>> futures = new ArrayList<Future<int[]>>(requests.size());
+        for (Request request : requests) {
+            futures.add(submitArgb(request));
+        }
+        try {
+            return getResults(futures);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);  // can't happen
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static <T> List<T> getResults(List<Future<T>> futures) throws IOException, InterruptedException {
+        List<T> result = new ArrayList<T>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                result.add(getResult(future));
+            }
+        } finally {
+            if (result.size() < futures.size()) {
+                for (Future<T> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Render a request into the current thread's image buffer.
+     *
+     * @return the buffer. The request's image is its top left width x
+     *         height pixels.
+     */
+    private BufferedImage render(Request request) {
+        long startTime = System.nanoTime();
+        BufferedImage image = getImageBuffer(request.getWidth(), request.getHeight());
+        Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setClip(0, 0, request.getWidth(), request.getHeight());
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.setColor(null == background ? new Color(0, 0, 0, 0) : background);
+            g2d.fillRect(0, 0, request.getWidth(), request.getHeight());
+            g2d.setComposite(AlphaComposite.SrcOver);
+            if (antialiasing) {
+                g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            }
+            paintDrawing(request, new GC(g2d));
+        } finally {
+            g2d.dispose();
+        }
+        recordRendering(startTime, System.nanoTime());
+        return image;
+    }
+
+    private void paintDrawing(Request request, GC gc) {
+        Drawing drawing = request.getDrawing();
+        DrawingViewer viewer = new DrawingViewer(viewerAdapterFactory);
+        viewer.setObjectToDisplayTransform(request.transform);
+        viewer.setDrawing(drawing);
+        try {
+            viewer.paint(gc);
+        } finally {
+            viewer.setDrawing(null);
+        }
+    }
+
+    /**
+     *
+     * @return the current thread's image buffer, (re)allocated if it's
+     *         smaller than width x height
+     */
+    private BufferedImage getImageBuffer(int width, int height) {
+        BufferedImage image = imageBuffer.get();
+        if (null == image || image.getWidth() < width || image.getHeight() < height) {
+            if (null != image) {
+                width = Math.max(width, image.getWidth());
+                height = Math.max(height, image.getHeight());
+                image.flush();
+            }
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            imageBuffer.set(image);
+        }
+        return image;
+    }
+
+    private static byte[] toPng(BufferedImage image, Request request) throws IOException {
+        BufferedImage outputImage = image;
+        if (image.getWidth() != request.getWidth() || image.getHeight() != request.getHeight()) {
+            outputImage = image.getSubimage(0, 0, request.getWidth(), request.getHeight());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(outputImage, "png", out)) {
+            throw new IOException("no PNG writer available");
+        }
+        return out.toByteArray();
+    }
+
+    private static int[] toArgb(BufferedImage image, Request request) {
+        int w = request.getWidth(), h = request.getHeight();
+        return image.getRGB(0, 0, w, h, new int[w * h], 0, w);
+    }
+
+    /**
+     * Stop the rendering threads. Requests that have already been submitted
+     * are still rendered; no new ones are accepted.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // statistics
+
+    private synchronized void recordRendering(long startTime, long endTime) {
+        if (0 == renderedCount || startTime < firstStartTime) {
+            firstStartTime = startTime;
+        }
+        if (0 == renderedCount || endTime > lastEndTime) {
+            lastEndTime = endTime;
+        }
+        renderedCount++;
+        renderNanos += endTime - startTime;
+    }
+
+    /**
+     *
+     * @return number of drawings rendered (since creation or the last
+     *         {@link #resetStatistics()})
+     */
+    public synchronized long getRenderedCount() {
+        return renderedCount;
+    }
+
+    /**
+     *
+     * @return average time spent rendering a drawing, in milliseconds,
+     *         excluding the PNG encoding or ARGB copying. 0 if nothing has
+     *         been rendered.
+     */
+    public synchronized double getMillisPerDrawing() {
+        return (0 == renderedCount ? 0 : renderNanos / 1e6 / renderedCount);
+    }
+
+    /**
+     *
+     * @return throughput: number of drawings rendered per second of wall
+     *         clock time between the start of the first and the end of the
+     *         last rendering. With several threads, this is higher than
+     *         1000 / {@link #getMillisPerDrawing()}. 0 if nothing has been
+     *         rendered.
+     */
+    public synchronized double getDrawingsPerSecond() {
+        long elapsed = lastEndTime - firstStartTime;
+        return (0 == renderedCount || elapsed <= 0 ? 0 : renderedCount * 1e9 / elapsed);
+    }
+
+    public synchronized void resetStatistics() {
+        renderedCount = renderNanos = firstStartTime = lastEndTime = 0;
+    }
+
+}
@@ -0,0 +1,170 @@
+package de.sofd.draw2d.viewer;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.sofd.draw2d.viewer.adapters.DrawingObjectViewerAdapter;
+import de.sofd.draw2d.viewer.gc.GC;
+
+/**
+ * Retained rendering of a {@link DrawingViewer}'s base layer, i.e. of all the
+ * objects that aren't painted in the viewer's overlay (see
+ * {@link DrawingViewer.RenderingMode}). The viewer reports the display areas
+ * whose rendering became invalid; the cache re-renders them (via
+ * {@link DrawingViewer#paintBaseLayer(GC, List)}) the next time it is
+ * painted.
+ * <p>
+ * All coordinates are display coordinates.
+ * 
+ * @author olaf
+ */
+abstract class BaseLayerCache {
+
+    private static final Color TRANSPARENT = new Color(0, 0, 0, 0);
+
+    protected final DrawingViewer viewer;
+
+    protected BaseLayerCache(DrawingViewer viewer) {
+        this.viewer = viewer;
+    }
+
+    /**
+     * Mark an area of the base layer as needing re-rendering.
+     * 
+     * @param disp
+     *            the area. Not modified.
+     */
+    abstract void invalidate(Rectangle disp);
+
+    /**
+     * Mark the whole base layer as needing re-rendering.
+     */
+    abstract void invalidateAll();
+
+    /**
+     * Called when the viewer's object-to-display transformation has changed.
+     * BaseLayerCache's implementation invalidates everything.
+     */
+    void transformChanged() {
+        invalidateAll();
+    }
+
+    /**
+     * Called when the viewer's object-to-display transformation has changed
+     * only by a translation of (dx, dy), i.e. the display content has moved by
+     * that much. BaseLayerCache's implementation calls
+     * {@link #transformChanged()}.
+     * 
+     * @param dx
+     *            dx
+     * @param dy
+     *            dy
+     */
+    void translated(double dx, double dy) {
+        transformChanged();
+    }
+
+    /**
+     * Paint the base layer onto gc, at least inside clip, re-rendering invalid
+     * parts as necessary.
+     * 
+     * @param gc
+     *            the GC to paint on. Holds a Graphics2D whose transformation
+     *            is a pure translation.
+     * @param clip
+     *            gc's clip bounds
+     */
+    abstract void paintOn(GC gc, Rectangle clip);
+
+    /**
+     * Release all retained images. The cache must not be used afterwards.
+     */
+    abstract void dispose();
+
+    /**
+     * The state of a template GC that is copied to the GCs used for rendering
+     * into cache images, so the result looks as if it had been painted
+     * directly onto the template. Captured on the paint thread so rendering
+     * may happen on other threads.
+     */
+    protected static class RenderSetup {
+        final RenderingHints hints;
+        final Font font;
+        final Paint paint;
+        final Stroke stroke;
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+
+        RenderSetup(GC template) {
+            Graphics2D tg = template.getGraphics2D();
+            hints = (null == tg ? null : (RenderingHints) tg.getRenderingHints().clone());
+            font = (null == tg ? null : tg.getFont());
+            paint = (null == tg ? null : tg.getPaint());
+            stroke = (null == tg ? null : tg.getStroke());
+            for (String name : template.getAllAttributeNames()) {
+                attributes.put(name, template.getAttribute(name));
+            }
+        }
+    }
+
+    /**
+     * Render the area r of the base layer into image, which covers the display
+     * area starting at (imageX, imageY). The area is cleared to transparent
+     * first.
+     * 
+     * @param image
+     *            image
+     * @param imageX
+     *            display x coordinate of image's left edge
+     * @param imageY
+     *            display y coordinate of image's top edge
+     * @param r
+     *            area to render
+     * @param setup
+     *            setup of the GC to render with
+     * @param adapters
+     *            adapters of the objects to render, as returned by
+     *            {@link DrawingViewer#getBaseLayerAdapters(List)} for r
+     */
+    protected static void renderInto(BufferedImage image, int imageX, int imageY, Rectangle r,
+                                     RenderSetup setup, List<DrawingObjectViewerAdapter> adapters) {
+        Graphics2D g2d = image.createGraphics();
+        try {
+            if (null != setup.hints) {
+                g2d.setRenderingHints(setup.hints);
+            }
+            if (null != setup.font) {
+                g2d.setFont(setup.font);
+            }
+            g2d.translate(-imageX, -imageY);
+            g2d.setClip(r.x, r.y, r.width, r.height);
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.setColor(TRANSPARENT);
+            g2d.fillRect(r.x, r.y, r.width, r.height);
+            g2d.setComposite(AlphaComposite.SrcOver);
+            if (null != setup.paint) {
+                g2d.setPaint(setup.paint);
+            }
+            if (null != setup.stroke) {
+                g2d.setStroke(setup.stroke);
+            }
+            GC gc = new GC(g2d);
+            for (Map.Entry<String, Object> attr : setup.attributes.entrySet()) {
+                gc.setAttribute(attr.getKey(), attr.getValue());
+            }
+            DrawingViewer.paintBaseLayer(gc, adapters);
+        } finally {
+            g2d.dispose();
+        }
+    }
+
+}
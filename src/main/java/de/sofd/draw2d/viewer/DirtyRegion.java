@@ -0,0 +1,141 @@
+package de.sofd.draw2d.viewer;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Set of rectangles (in display coordinates) in need of repainting, used by
+ * {@link RepaintScheduler}. Added rectangles are merged with existing ones
+ * when that doesn't add much area that doesn't actually need repainting, so
+ * the region is normally described by a few disjoint-ish rectangles rather
+ * than a single, possibly huge, union.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author olaf
+ */
+class DirtyRegion {
+
+    /**
+     * Maximum number of rectangles kept. If adding a rectangle would exceed
+     * it, the two rectangles whose union wastes the least area are merged.
+     */
+    static final int MAX_RECTS = 8;
+
+    /**
+     * Two rectangles are merged into their union if the union's area is at
+     * most this factor times the sum of their areas.
+     */
+    static final double MERGE_AREA_FACTOR = 1.5;
+
+    private final List<Rectangle> rects = new ArrayList<Rectangle>(MAX_RECTS + 1);
+
+    /**
+     * Move all rectangles of the region by (dx, dy).
+     *
+     * @param dx
+     *            dx
+     * @param dy
+     *            dy
+     */
+    public void translate(int dx, int dy) {
+        for (Rectangle r : rects) {
+            r.translate(dx, dy);
+        }
+    }
+
+    public boolean isEmpty() {
+        return rects.isEmpty();
+    }
+
+    public void clear() {
+        rects.clear();
+    }
+
+    /**
+     *
+     * @return the current rectangles. The returned list is a copy.
+     */
+    public List<Rectangle> getRectangles() {
+        List<Rectangle> result = new ArrayList<Rectangle>(rects.size());
+        for (Rectangle r : rects) {
+            result.add(new Rectangle(r));
+        }
+        return result;
+    }
+
+    /**
+     * Add r to the region.
+     *
+     * @param r
+     *            r. Not modified; the region stores a copy if necessary.
+     * @return false if r was already completely contained in the region (or
+     *         empty), so adding it didn't change anything
+     */
+    public boolean add(Rectangle r) {
+        if (r.isEmpty()) {
+            return false;
+        }
+        for (Rectangle existing : rects) {
+            if (existing.contains(r)) {
+                return false;
+            }
+        }
+        Rectangle merged = new Rectangle(r);
+        // merge with existing rectangles as long as that's cheap; the merged
+        // rectangle may in turn make other merges cheap, so repeat
+        boolean mergedAny = true;
+        while (mergedAny) {
+            mergedAny = false;
+            for (int i = 0; i < rects.size(); i++) {
+                Rectangle existing = rects.get(i);
+                if (isCheapToMerge(existing, merged)) {
+                    merged.add(existing);
+                    rects.remove(i);
+                    mergedAny = true;
+                    break;
+                }
+            }
+        }
+        rects.add(merged);
+        while (rects.size() > MAX_RECTS) {
+            mergeCheapestPair();
+        }
+        return true;
+    }
+
+    private static long area(Rectangle r) {
+        return (long) r.width * r.height;
+    }
+
+    private static long unionArea(Rectangle a, Rectangle b) {
+        int x1 = Math.min(a.x, b.x), y1 = Math.min(a.y, b.y);
+        int x2 = Math.max(a.x + a.width, b.x + b.width), y2 = Math.max(a.y + a.height, b.y + b.height);
+        return (long) (x2 - x1) * (y2 - y1);
+    }
+
+    private static boolean isCheapToMerge(Rectangle a, Rectangle b) {
+        return a.intersects(b) && unionArea(a, b) <= MERGE_AREA_FACTOR * (area(a) + area(b)) ||
+               a.contains(b) || b.contains(a);
+    }
+
+    private void mergeCheapestPair() {
+        int bestI = 0, bestJ = 1;
+        long bestWaste = Long.MAX_VALUE;
+        for (int i = 0; i < rects.size(); i++) {
+            for (int j = i + 1; j < rects.size(); j++) {
+                Rectangle a = rects.get(i), b = rects.get(j);
+                long waste = unionArea(a, b) - area(a) - area(b);
+                if (waste < bestWaste) {
+                    bestWaste = waste;
+                    bestI = i;
+                    bestJ = j;
+                }
+            }
+        }
+        Rectangle b = rects.remove(bestJ);
+        rects.get(bestI).add(b);
+    }
+
+}
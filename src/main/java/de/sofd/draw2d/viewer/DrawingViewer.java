@@ -1,5 +1,6 @@
 package de.sofd.draw2d.viewer;
 
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.event.InputEvent;
 import java.awt.event.MouseEvent;
@@ -8,11 +9,15 @@ import java.awt.event.MouseWheelListener;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.EventObject;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -20,8 +25,10 @@ import javax.swing.event.MouseInputListener;
 
 import de.sofd.draw2d.Drawing;
 import de.sofd.draw2d.DrawingObject;
+import de.sofd.draw2d.event.DrawingEvent;
 import de.sofd.draw2d.event.DrawingListener;
 import de.sofd.draw2d.event.DrawingObjectAddOrMoveEvent;
+import de.sofd.draw2d.event.DrawingObjectBulkChangeEvent;
 import de.sofd.draw2d.event.DrawingObjectEvent;
 import de.sofd.draw2d.event.DrawingObjectRemoveEvent;
 import de.sofd.draw2d.viewer.adapters.DefaultObjectViewerAdapterFactory;
@@ -29,6 +36,7 @@ import de.sofd.draw2d.viewer.adapters.DrawingObjectViewerAdapter;
 import de.sofd.draw2d.viewer.adapters.MouseHandle;
 import de.sofd.draw2d.viewer.adapters.ObjectViewerAdapterFactory;
 import de.sofd.draw2d.viewer.backend.DrawingViewerBackend;
+import de.sofd.draw2d.viewer.backend.ScrollingDrawingViewerBackend;
 import de.sofd.draw2d.viewer.event.DrawingViewerEvent;
 import de.sofd.draw2d.viewer.event.DrawingViewerListener;
 import de.sofd.draw2d.viewer.event.DrawingViewerSelectionChangeEvent;
@@ -64,6 +72,16 @@ import de.sofd.util.IdentityHashSet;
  * The DrawingViewer listens to change events of its Drawing, changes to the
  * transformation etc., and redraws its display accordingly. See the section
  * about backends below for how display output actually works.
+ * <p>
+ * By default, every paint redraws all objects in the painted area from
+ * scratch. In the {@link RenderingMode#LAYERED LAYERED} rendering mode (see
+ * {@link #setRenderingMode(RenderingMode)}), the viewer instead retains a
+ * rendering of the unselected objects in an offscreen image (the "base
+ * layer") and paints only the selected objects, their selection
+ * visualizations and the objects the current tool is working on (the
+ * "overlay") from scratch on top of it. The base layer is re-rendered only
+ * where the drawing changed. The {@link RenderingMode#TILED TILED} mode does
+ * the same with a cache of base layer tiles that survives zooming and panning.
  * 
  * <h1>Selection</h1>
  * 
@@ -156,6 +174,11 @@ import de.sofd.util.IdentityHashSet;
  * methods would normally schedule a repaint request, and the viewer's paint
  * method would be called during each paint event processing of the component.
  * <p>
+ * The repaint requests go through the viewer's {@link RepaintScheduler} (see
+ * {@link #getRepaintScheduler()}), which may be configured to merge them and
+ * pass them on to the backend at most once per frame interval. By default, it
+ * passes every request on immediately.
+ * <p>
  * For mouse processing, the backend would just feed mouse events to the
  * viewer's {@link #processInputEvent(InputEvent)} method. Depending what event
  * triggers in the viewer (object selection, handle dragging etc.), this might
@@ -195,9 +218,49 @@ public class DrawingViewer {
 
     private AffineTransform objectToDisplayTransform;
     private AffineTransform displayToObjectTransform;
+    // what setObjectToDisplayTransform() compares against. Never handed out,
+    // so callers modifying the transform from the getter and setting it
+    // again can't make it look unchanged
+    private AffineTransform lastObjectToDisplayTransform;
+    private int objectToDisplayTransformVersion = 0;
 
     private DrawingViewerBackend backend;
 
+    private final RepaintScheduler repaintScheduler = new RepaintScheduler(this);
+
+    /**
+     * How a DrawingViewer renders its drawing in {@link DrawingViewer#paint(GC)}.
+     */
+    public static enum RenderingMode {
+        /**
+         * Paint all objects in the painted area directly onto the GC, every
+         * time. The default.
+         */
+        DIRECT,
+        /**
+         * Keep the unselected objects in an offscreen image covering the
+         * painted area, re-rendering it only where the drawing changed, and
+         * paint the selected objects and the current tool's
+         * {@link DrawingViewerTool#getObjectsInProgress() objects in progress}
+         * on top of it. Selected objects thus appear above all unselected
+         * ones. Falls back to DIRECT painting for GCs that don't hold a
+         * Graphics2D, have no clip or have a transformation other than a
+         * translation.
+         */
+        LAYERED,
+        /**
+         * Like LAYERED, but keep the base layer in tiles per zoom level, which
+         * survive panning and zooming (see {@link TileCache}). Meant for large
+         * drawings that are zoomed and panned a lot.
+         */
+        TILED
+    }
+
+    private RenderingMode renderingMode = RenderingMode.DIRECT;
+    private BaseLayerCache baseLayerCache;
+    // objects that weren't rendered into the base layer at the last paint
+    private final Collection<DrawingObject> baseExcludedObjects = new IdentityHashSet<DrawingObject>();
+
     private final List<DrawingViewerListener> drawingViewerListeners = new ArrayList<DrawingViewerListener>();
 
     public void addDrawingViewerListener(DrawingViewerListener l) {
@@ -244,20 +307,101 @@ public class DrawingViewer {
         setDrawing(drawing);
     }
     
+    /**
+     * Set the object-to-display transformation and update the display
+     * accordingly.
+     * <p>
+     * If t differs from the current transformation only by its translation
+     * (i.e. the view is panned), cached renderings are shifted rather than
+     * discarded, and if the translation is by whole pixels and the backend is
+     * a {@link ScrollingDrawingViewerBackend}, the backend is asked to scroll
+     * its display instead of repainting it completely.
+     * 
+     * @param t
+     *            the new transformation. Copied.
+     */
     public void setObjectToDisplayTransform(AffineTransform t) {
+        AffineTransform oldTransform = lastObjectToDisplayTransform;
         try {
             displayToObjectTransform = t.createInverse();
-            objectToDisplayTransform = t;
+            objectToDisplayTransform = new AffineTransform(t);
         } catch (NoninvertibleTransformException e) {
             throw new IllegalArgumentException("not invertible: " + t, e);
         }
-        repaint();
+        lastObjectToDisplayTransform = new AffineTransform(t);
+        boolean isPan = (null != oldTransform &&
+                         oldTransform.getScaleX() == t.getScaleX() && oldTransform.getShearY() == t.getShearY() &&
+                         oldTransform.getShearX() == t.getShearX() && oldTransform.getScaleY() == t.getScaleY());
+        double dx = 0, dy = 0;
+        if (isPan) {
+            dx = t.getTranslateX() - oldTransform.getTranslateX();
+            dy = t.getTranslateY() - oldTransform.getTranslateY();
+            if (dx == 0 && dy == 0) {
+                // unchanged; keep the adapters' cached display geometry
+                return;
+            }
+        }
+        objectToDisplayTransformVersion++;
+        if (null != baseLayerCache) {
+            if (isPan) {
+                baseLayerCache.translated(dx, dy);
+            } else {
+                baseLayerCache.transformChanged();
+            }
+        }
+        if (!(isPan && scrollBackend(dx, dy))) {
+            repaint();
+        }
     }
 
+    /**
+     * Let the backend shift its display by (dx, dy) if possible.
+     * 
+     * @return true if that worked and no repaint is necessary, except for
+     *         what the backend requests itself
+     */
+    private boolean scrollBackend(double dx, double dy) {
+        if (!(backend instanceof ScrollingDrawingViewerBackend) || !isWholePixels(dx) || !isWholePixels(dy)) {
+            return false;
+        }
+        int idx = (int) Math.rint(dx), idy = (int) Math.rint(dy);
+        if (!repaintScheduler.translatePending(idx, idy)) {
+            return false;
+        }
+        return ((ScrollingDrawingViewerBackend) backend).scroll(idx, idy);
+    }
+
+    /**
+     * 
+     * @return true if d is a whole number of pixels, apart from rounding
+     *         errors of the transformation arithmetic
+     */
+    static boolean isWholePixels(double d) {
+        return Math.abs(d - Math.rint(d)) < 1e-9;
+    }
+
+    /**
+     * 
+     * @return the current object-to-display transformation. Must not be
+     *         modified unless it is passed to
+     *         {@link #setObjectToDisplayTransform(AffineTransform)} right
+     *         afterwards (which compares against a private copy of the
+     *         previous transformation); better modify a copy.
+     */
     public AffineTransform getObjectToDisplayTransform() {
         return objectToDisplayTransform;
     }
 
+    /**
+     * 
+     * @return number that changes whenever the object-to-display
+     *         transformation changes. Lets adapters and other caches of
+     *         display coordinates check cheaply whether they're still valid.
+     */
+    public int getObjectToDisplayTransformVersion() {
+        return objectToDisplayTransformVersion;
+    }
+
     public AffineTransform getDisplayToObjectTransform() {
         return displayToObjectTransform;
     }
@@ -275,11 +419,15 @@ public class DrawingViewer {
             deactivateCurrentTool();
             clearSelection();
             this.drawing.removeDrawingListener(drawingEventHandler);
+            this.drawing.removeDrawingListener(objectEventHandler);
             this.objectDrawingAdapters.clear();
         }
         this.drawing = d;
+        baseExcludedObjects.clear();
+        invalidateBaseLayer();
         if (null != this.drawing) {
-            this.drawing.addDrawingListener(drawingEventHandler);
+            this.drawing.addDrawingListener(DrawingEvent.class, drawingEventHandler);
+            this.drawing.addDrawingListener(DrawingObjectEvent.class, objectEventHandler);
             for (DrawingObject drobj : this.drawing.getObjects()) {
                 this.objectDrawingAdapters.put(drobj, createViewerAdapterFor(drobj));
             }
@@ -301,6 +449,7 @@ public class DrawingViewer {
         if (null != this.backend) {
             this.backend.disconnecting();
         }
+        repaintScheduler.discardPending();
         this.backend = be;
         if (null != this.backend) {
             this.backend.connected(this);
@@ -312,6 +461,60 @@ public class DrawingViewer {
         return backend;
     }
 
+    public RenderingMode getRenderingMode() {
+        return renderingMode;
+    }
+
+    /**
+     * 
+     * @return the tile cache used in {@link RenderingMode#TILED} mode, for
+     *         configuration and statistics. null in other modes. A new one is
+     *         created whenever TILED mode is entered.
+     */
+    public TileCache getTileCache() {
+        return (baseLayerCache instanceof TileCache ? (TileCache) baseLayerCache : null);
+    }
+
+    /**
+     * Set the way this viewer renders its drawing. See {@link RenderingMode}.
+     * 
+     * @param mode
+     *            the mode. Changing it drops any retained rendering and
+     *            repaints the viewer.
+     */
+    public void setRenderingMode(RenderingMode mode) {
+        if (null == mode) {
+            throw new NullPointerException("mode");
+        }
+        if (mode == renderingMode) {
+            return;
+        }
+        if (null != baseLayerCache) {
+            baseLayerCache.dispose();
+            baseLayerCache = null;
+        }
+        baseExcludedObjects.clear();
+        renderingMode = mode;
+        if (mode == RenderingMode.LAYERED) {
+            baseLayerCache = new ViewportLayerCache(this);
+        } else if (mode == RenderingMode.TILED) {
+            baseLayerCache = new TileCache(this);
+        }
+        repaint();
+    }
+
+    /**
+     * 
+     * @return the {@link RepaintScheduler} through which all of this viewer's
+     *         repaint requests go to the backend. Can be used to throttle
+     *         repaints (see
+     *         {@link RepaintScheduler#setFrameIntervalMillis(long)}) and to
+     *         query repaint statistics.
+     */
+    public RepaintScheduler getRepaintScheduler() {
+        return repaintScheduler;
+    }
+
     public List<DrawingObject> getDrawingObjectsAtObjCoord(Point2D pt) {
         checkDrawingSet();
         return drawing.getDrawingObjectsAt(pt);
@@ -340,6 +543,7 @@ public class DrawingViewer {
         return objectDrawingAdapters.get(drobj);
     }
 
+    // structural changes of the drawing (DrawingEvents)
     private DrawingListener drawingEventHandler = new DrawingListener() {
         @Override
         public void onDrawingEvent(EventObject e) {
@@ -363,17 +567,54 @@ public class DrawingViewer {
                     repaintObjectArea(re.getObject());
                     objectDrawingAdapters.remove(re.getObject());
                 }
-            } else if (e instanceof DrawingObjectEvent) {
-                DrawingObjectEvent de = (DrawingObjectEvent) e;
-                objectDrawingAdapters.get(de.getSource()).onDrawingObjectEvent(de);
+            } else if (e instanceof DrawingObjectBulkChangeEvent) {
+                DrawingObjectBulkChangeEvent be = (DrawingObjectBulkChangeEvent) e;
+                if (be.isBeforeChange()) {
+                    if (!be.getRemovedObjects().isEmpty()) {
+                        removeFromSelection(be.getRemovedObjects());
+                    }
+                } else {
+                    // drop/create all the adapters in one pass and repaint
+                    // everything once instead of per object
+                    for (DrawingObject drobj : be.getRemovedObjects()) {
+                        objectDrawingAdapters.remove(drobj);
+                    }
+                    for (DrawingObject drobj : be.getAddedObjects()) {
+                        objectDrawingAdapters.put(drobj, createViewerAdapterFor(drobj));
+                    }
+                    invalidateBaseLayer();
+                    repaint();
+                }
             }
         }
     };
 
+    // changes of the drawing's objects (DrawingObjectEvents), forwarded to their adapters
+    private DrawingListener objectEventHandler = new DrawingListener() {
+        @Override
+        public void onDrawingEvent(EventObject e) {
+            DrawingObjectEvent de = (DrawingObjectEvent) e;
+            objectDrawingAdapters.get(de.getSource()).onDrawingObjectEvent(de);
+        }
+    };
+
     public Collection<DrawingObject> getSelection() {
         return new ArrayList<DrawingObject>(selectedObjects);
     }
 
+    private final Collection<DrawingObject> selectionView = Collections.unmodifiableCollection(selectedObjects);
+
+    /**
+     * Read-only alternative to {@link #getSelection()} that doesn't copy
+     * anything.
+     * 
+     * @return unmodifiable live view of the selected objects. Must not be
+     *         iterated over while the selection changes.
+     */
+    public Collection<DrawingObject> getSelectionView() {
+        return selectionView;
+    }
+
     public boolean isSelected(DrawingObject drobj) {
         return selectedObjects.contains(drobj);
     }
@@ -384,7 +625,11 @@ public class DrawingViewer {
         Collection<DrawingObject> toBeSelected = new IdentityHashSet<DrawingObject>(drobjs);
         toBeSelected.removeAll(selectedObjects);
         if (null != drawing) {
-            toBeSelected.retainAll(drawing.getObjects());
+            for (Iterator<DrawingObject> it = toBeSelected.iterator(); it.hasNext();) {
+                if (!drawing.contains(it.next())) {
+                    it.remove();
+                }
+            }
         }
         if (!toBeUnselected.isEmpty()) {
             fireDrawingViewerEvent(DrawingViewerSelectionChangeEvent.newBeforeObjectRemoveEvent(this, toBeUnselected));
@@ -438,7 +683,7 @@ public class DrawingViewer {
 
     public void selectAll() {
         if (null != drawing) {
-            setSelection(drawing.getObjects());
+            setSelection(drawing.getObjectsView());
         }
     }
 
@@ -594,25 +839,50 @@ public class DrawingViewer {
      */
     public void repaintObjectArea(DrawingObject drobj) {
         Rectangle bounds = getDrawingAdapterFor(drobj).getBounds2DDisp().getBounds();
+        if (null != baseLayerCache && !baseExcludedObjects.contains(drobj)) {
+            baseLayerCache.invalidate(bounds);
+        }
         repaint(bounds.x, bounds.y, bounds.width, bounds.height);
     }
 
+    /**
+     * schedule repainting of the drawing area covered by drobjs, as a single
+     * repaint request for the union of the objects' areas.
+     * 
+     * @param drobjs
+     */
     protected void repaintObjectAreas(Collection<DrawingObject> drobjs) {
+        Rectangle union = null;
         for (DrawingObject drobj : drobjs) {
-            repaintObjectArea(drobj);
+            Rectangle bounds = getDrawingAdapterFor(drobj).getBounds2DDisp().getBounds();
+            if (null == union) {
+                union = bounds;
+            } else {
+                union.add(bounds);
+            }
+        }
+        if (null != union) {
+            repaint(union.x, union.y, union.width, union.height);
         }
     }
 
     protected void repaint() {
-        if (backend != null) {
-            backend.repaint();
+        repaintScheduler.requestRepaint();
+    }
+
+    /**
+     * Drop the retained rendering of the base layer, if any (see
+     * {@link RenderingMode#LAYERED}), so it is re-rendered completely on the
+     * next paint. Doesn't schedule a repaint by itself.
+     */
+    protected void invalidateBaseLayer() {
+        if (null != baseLayerCache) {
+            baseLayerCache.invalidateAll();
         }
     }
 
     protected void repaint(double x, double y, double width, double height) {
-        if (backend != null) {
-            backend.repaint(x, y, width, height);
-        }
+        repaintScheduler.requestRepaint(x, y, width, height);
     }
 
     /**
@@ -642,25 +912,214 @@ public class DrawingViewer {
         if (drawing == null) {
             return;
         }
-        for (DrawingObject drobj : drawing.getObjects()) {
+        Rectangle clip = gc.getClipBounds();
+        Graphics2D g2d = gc.getGraphics2D();
+        if (null == baseLayerCache || null == clip || clip.isEmpty() || null == g2d ||
+                (g2d.getTransform().getType() & ~AffineTransform.TYPE_TRANSLATION) != 0) {
+            paintDirect(gc, clip);
+            return;
+        }
+        Collection<DrawingObject> overlayObjects = getOverlayObjects();
+        // objects moving between base layer and overlay must be (re)rendered
+        // into / erased from the base layer
+        for (DrawingObject drobj : overlayObjects) {
+            if (!baseExcludedObjects.contains(drobj)) {
+                baseLayerCache.invalidate(getDrawingAdapterFor(drobj).getBounds2DDisp().getBounds());
+            }
+        }
+        for (DrawingObject drobj : baseExcludedObjects) {
+            if (!overlayObjects.contains(drobj)) {
+                DrawingObjectViewerAdapter drawingAdapter = objectDrawingAdapters.get(drobj);
+                if (null != drawingAdapter) {
+                    baseLayerCache.invalidate(drawingAdapter.getBounds2DDisp().getBounds());
+                }
+            }
+        }
+        baseExcludedObjects.clear();
+        baseExcludedObjects.addAll(overlayObjects);
+
+        baseLayerCache.paintOn(gc, clip);
+
+        List<DrawingObject> toPaint = new ArrayList<DrawingObject>(overlayObjects.size());
+        for (DrawingObject drobj : overlayObjects) {
+            if (objectDrawingAdapters.get(drobj).intersectsDisp(clip)) {
+                toPaint.add(drobj);
+            }
+        }
+        sortByZOrder(toPaint);
+        for (DrawingObject drobj : toPaint) {
+            objectDrawingAdapters.get(drobj).paintObjectOn(gc);
+        }
+        for (DrawingObject drobj : toPaint) {
+            objectDrawingAdapters.get(drobj).paintSelectionVisualizationOn(gc, isSelected(drobj));
+        }
+    }
+
+    private void paintDirect(GC gc, Rectangle clip) {
+        List<DrawingObject> objects = (null == clip ? drawing.getObjectsView() : getObjectsNearDisp(clip));
+        List<DrawingObjectViewerAdapter> visibleAdapters = new ArrayList<DrawingObjectViewerAdapter>(objects.size());
+        for (DrawingObject drobj : objects) {
             DrawingObjectViewerAdapter drawingAdapter = objectDrawingAdapters.get(drobj);
             assert drawingAdapter != null;
-            Rectangle clip = gc.getClipBounds();
-            if (clip != null && !drawingAdapter.intersectsDisp(clip)) {
-                continue;
+            if (clip == null || drawingAdapter.intersectsDisp(clip)) {
+                visibleAdapters.add(drawingAdapter);
             }
+        }
+        for (DrawingObjectViewerAdapter drawingAdapter : visibleAdapters) {
             drawingAdapter.paintObjectOn(gc);  // TODO: save/restore gc's state before/after this? (we did when we still used Graphics2D directly?)
         }
         // paint the selection visualizations on top of all the objects'
         // outlines themselves
-        for (DrawingObject drobj : drawing.getObjects()) {
+        for (DrawingObjectViewerAdapter drawingAdapter : visibleAdapters) {
+            drawingAdapter.paintSelectionVisualizationOn(gc, isSelected(drawingAdapter.getDrawingObject()));  // TODO: (see above)
+        }
+    }
+
+    /**
+     * Margin, in display pixels, by which an area is extended before looking
+     * up the objects in it in the drawing's spatial index. Covers the handle
+     * margin of {@link DrawingObjectViewerAdapter#getBounds2DDisp()}.
+     */
+    static final int CULLING_MARGIN = DrawingObjectViewerAdapter.HANDLE_BOX_WIDTH / 2 + 2;
+
+    /**
+     * Find the objects that may have to be painted in a display area, using
+     * the drawing's spatial index: the area is extended by
+     * {@link #CULLING_MARGIN} and transformed to object coordinates once, and
+     * all objects whose bounding box intersects that are returned. Callers
+     * check the candidates with
+     * {@link DrawingObjectViewerAdapter#intersectsDisp(Rectangle2D)}.
+     * 
+     * @param area
+     *            the area, in display coordinates
+     * @return the candidate objects, in z order (bottommost first)
+     */
+    private List<DrawingObject> getObjectsNearDisp(Rectangle area) {
+        Rectangle2D searchArea = new Rectangle2D.Double(area.x - CULLING_MARGIN, area.y - CULLING_MARGIN,
+                                                        area.width + 2 * CULLING_MARGIN, area.height + 2 * CULLING_MARGIN);
+        List<DrawingObject> result = drawing.getDrawingObjectsIntersecting(
+                displayToObjectTransform.createTransformedShape(searchArea).getBounds2D());
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * 
+     * @return the objects painted in the overlay rather than the base layer
+     *         in {@link RenderingMode#LAYERED}: the selected objects and the
+     *         current tool's objects in progress that are in the drawing
+     */
+    private Collection<DrawingObject> getOverlayObjects() {
+        Collection<DrawingObject> result = new IdentityHashSet<DrawingObject>(selectedObjects);
+        if (null != currentTool) {
+            for (DrawingObject drobj : currentTool.getObjectsInProgress()) {
+                if (drawing.contains(drobj)) {
+                    result.add(drobj);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void sortByZOrder(List<DrawingObject> drobjs) {
+        if (drobjs.size() < 2) {
+            return;
+        }
+        if (drobjs.size() <= 32) {
+            final Map<DrawingObject, Integer> indices = new IdentityHashMap<DrawingObject, Integer>();
+            for (DrawingObject drobj : drobjs) {
+                indices.put(drobj, drawing.indexOf(drobj));
+            }
+            Collections.sort(drobjs, new Comparator<DrawingObject>() {
+                @Override
+                public int compare(DrawingObject o1, DrawingObject o2) {
+                    return indices.get(o1).compareTo(indices.get(o2));
+                }
+            });
+        } else {
+            // many objects: one pass over the drawing is cheaper than many
+            // indexOf() calls
+            Collection<DrawingObject> members = new IdentityHashSet<DrawingObject>(drobjs);
+            drobjs.clear();
+            for (DrawingObject drobj : drawing.getObjectsView()) {
+                if (members.contains(drobj)) {
+                    drobjs.add(drobj);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determine the objects to paint in the base layer (see
+     * {@link RenderingMode#LAYERED}) in each of the given areas, i.e. the
+     * objects that aren't in the overlay and intersect the area. Objects that
+     * intersect the union of the areas (according to
+     * {@link DrawingObjectViewerAdapter#intersectsDisp(Rectangle2D)}) are
+     * assigned to the areas their
+     * {@link DrawingObjectViewerAdapter#getBounds2DDisp()} intersects. Called
+     * by the base layer caches on the paint thread.
+     * 
+     * @param areas
+     *            the areas, in display coordinates
+     * @return for each area, the adapters of the objects to paint there, in z
+     *         order (bottommost first)
+     */
+    List<List<DrawingObjectViewerAdapter>> getBaseLayerAdapters(List<Rectangle> areas) {
+        int n = areas.size();
+        List<List<DrawingObjectViewerAdapter>> result = new ArrayList<List<DrawingObjectViewerAdapter>>(n);
+        Rectangle union = null;
+        for (Rectangle area : areas) {
+            result.add(new ArrayList<DrawingObjectViewerAdapter>());
+            if (null == union) {
+                union = new Rectangle(area);
+            } else {
+                union.add(area);
+            }
+        }
+        if (null == union) {
+            return result;
+        }
+        for (DrawingObject drobj : getObjectsNearDisp(union)) {
+            if (baseExcludedObjects.contains(drobj)) {
+                continue;
+            }
             DrawingObjectViewerAdapter drawingAdapter = objectDrawingAdapters.get(drobj);
-            assert drawingAdapter != null;
-            Rectangle clip = gc.getClipBounds();
-            if (clip != null && !drawingAdapter.intersectsDisp(clip)) {
+            if (!drawingAdapter.intersectsDisp(union)) {
                 continue;
             }
-            drawingAdapter.paintSelectionVisualizationOn(gc, isSelected(drobj));  // TODO: (see above)
+            if (n == 1) {
+                result.get(0).add(drawingAdapter);
+                continue;
+            }
+            // assign to the areas by the display bounds, which is what
+            // intersectsDisp() normally does, but computes them only once
+            Rectangle2D bounds = drawingAdapter.getBounds2DDisp();
+            for (int i = 0; i < n; i++) {
+                if (areas.get(i).intersects(bounds)) {
+                    result.get(i).add(drawingAdapter);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Paint base layer objects onto gc: the objects themselves, then their
+     * (unselected) selection visualizations. May be called on threads other
+     * than the paint thread; see {@link DrawingObjectViewerAdapter#paintObjectOn(GC)}.
+     * 
+     * @param gc
+     *            gc
+     * @param adapters
+     *            adapters of the objects, as returned by
+     *            {@link #getBaseLayerAdapters(List)}
+     */
+    static void paintBaseLayer(GC gc, List<DrawingObjectViewerAdapter> adapters) {
+        for (DrawingObjectViewerAdapter drawingAdapter : adapters) {
+            drawingAdapter.paintObjectOn(gc);
+        }
+        for (DrawingObjectViewerAdapter drawingAdapter : adapters) {
+            drawingAdapter.paintSelectionVisualizationOn(gc, false);
         }
     }
 
@@ -0,0 +1,253 @@
+package de.sofd.draw2d.viewer;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import de.sofd.draw2d.viewer.backend.DrawingViewerBackend;
+
+/**
+ * Sits between a {@link DrawingViewer} and its {@link DrawingViewerBackend}
+ * and decides when the backend's repaint methods are called. Every viewer has
+ * one (see {@link DrawingViewer#getRepaintScheduler()}).
+ * <p>
+ * With a frame interval of 0 (the default), every repaint request is passed
+ * on to the backend immediately, as it always was. With a positive frame
+ * interval, requests are accumulated in a {@link DirtyRegion} and flushed to
+ * the backend at most once per interval: a request arriving at least one
+ * interval after the last flush is flushed immediately (together with
+ * anything pending), otherwise a flush is scheduled for when the interval has
+ * passed. A flush issues one backend repaint call per rectangle of the dirty
+ * region, or a single full repaint if one was requested. {@link #flush()}
+ * flushes immediately.
+ * <p>
+ * N.B.: With a positive frame interval, the scheduled flushes happen on a
+ * timer thread, so the backend's repaint methods must be callable from any
+ * thread then (Swing's JComponent#repaint methods are).
+ * <p>
+ * The scheduler counts requests and backend calls (see
+ * {@link #getRequestCount()}, {@link #getBackendRepaintCount()},
+ * {@link #getCoalescedCount()}).
+ *
+ * @author olaf
+ */
+public class RepaintScheduler {
+
+    private static Timer timer;
+
+    private static synchronized Timer getTimer() {
+        if (null == timer) {
+            timer = new Timer("draw2d repaint scheduler", true);
+        }
+        return timer;
+    }
+
+    private final DrawingViewer viewer;
+
+    private long frameIntervalMillis = 0;
+
+    private final DirtyRegion dirtyRegion = new DirtyRegion();
+    private boolean fullRepaintPending = false;
+    private long lastFlushTime = 0;
+    private TimerTask scheduledFlush;
+
+    private long requestCount, backendRepaintCount, flushCount;
+
+    RepaintScheduler(DrawingViewer viewer) {
+        this.viewer = viewer;
+    }
+
+    public DrawingViewer getViewer() {
+        return viewer;
+    }
+
+    public synchronized long getFrameIntervalMillis() {
+        return frameIntervalMillis;
+    }
+
+    /**
+     *
+     * @param frameIntervalMillis
+     *            minimum time between two flushes to the backend, in
+     *            milliseconds. 0 means no throttling: every request is passed
+     *            on immediately. Pending requests are flushed when this is
+     *            changed.
+     */
+    public void setFrameIntervalMillis(long frameIntervalMillis) {
+        if (frameIntervalMillis < 0) {
+            throw new IllegalArgumentException("negative frame interval: " + frameIntervalMillis);
+        }
+        synchronized (this) {
+            this.frameIntervalMillis = frameIntervalMillis;
+        }
+        flush();
+    }
+
+    /**
+     * Request a repaint of the whole display.
+     */
+    public void requestRepaint() {
+        synchronized (this) {
+            requestCount++;
+            fullRepaintPending = true;
+            dirtyRegion.clear();
+        }
+        flushOrSchedule();
+    }
+
+    /**
+     * Request a repaint of a rectangular part of the display.
+     *
+     * @param x
+     *            x
+     * @param y
+     *            y
+     * @param width
+     *            width
+     * @param height
+     *            height
+     */
+    public void requestRepaint(double x, double y, double width, double height) {
+        synchronized (this) {
+            requestCount++;
+            if (fullRepaintPending) {
+                return;
+            }
+            int x1 = (int) Math.floor(x), y1 = (int) Math.floor(y);
+            int x2 = (int) Math.ceil(x + width), y2 = (int) Math.ceil(y + height);
+            if (!dirtyRegion.add(new Rectangle(x1, y1, x2 - x1, y2 - y1))) {
+                return;
+            }
+        }
+        flushOrSchedule();
+    }
+
+    private void flushOrSchedule() {
+        synchronized (this) {
+            if (frameIntervalMillis > 0) {
+                long now = System.currentTimeMillis();
+                long due = lastFlushTime + frameIntervalMillis;
+                if (now < due) {
+                    if (null == scheduledFlush) {
+                        scheduledFlush = new TimerTask() {
+                            @Override
+                            public void run() {
+                                flush();
+                            }
+                        };
+                        getTimer().schedule(scheduledFlush, due - now);
+                    }
+                    return;
+                }
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Pass all pending requests on to the backend now.
+     */
+    public void flush() {
+        boolean full;
+        List<Rectangle> rects;
+        synchronized (this) {
+            if (null != scheduledFlush) {
+                scheduledFlush.cancel();
+                scheduledFlush = null;
+            }
+            full = fullRepaintPending;
+            rects = (full ? null : dirtyRegion.getRectangles());
+            fullRepaintPending = false;
+            dirtyRegion.clear();
+            if (!full && rects.isEmpty()) {
+                return;
+            }
+            lastFlushTime = System.currentTimeMillis();
+            flushCount++;
+            backendRepaintCount += (full ? 1 : rects.size());
+        }
+        DrawingViewerBackend backend = viewer.getBackend();
+        if (null == backend) {
+            return;
+        }
+        if (full) {
+            backend.repaint();
+        } else {
+            for (Rectangle r : rects) {
+                backend.repaint(r.x, r.y, r.width, r.height);
+            }
+        }
+    }
+
+    /**
+     * Move the pending partial repaint requests by (dx, dy), because the
+     * display content has been shifted by that much.
+     *
+     * @param dx
+     *            dx
+     * @param dy
+     *            dy
+     * @return false if a full repaint is pending, which can't be moved
+     */
+    synchronized boolean translatePending(int dx, int dy) {
+        if (fullRepaintPending) {
+            return false;
+        }
+        dirtyRegion.translate(dx, dy);
+        return true;
+    }
+
+    /**
+     * Drop all pending requests without passing them on.
+     */
+    synchronized void discardPending() {
+        if (null != scheduledFlush) {
+            scheduledFlush.cancel();
+            scheduledFlush = null;
+        }
+        fullRepaintPending = false;
+        dirtyRegion.clear();
+    }
+
+    // statistics
+
+    /**
+     *
+     * @return number of repaint requests received (full and partial)
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     *
+     * @return number of repaint calls made to the backend
+     */
+    public synchronized long getBackendRepaintCount() {
+        return backendRepaintCount;
+    }
+
+    /**
+     *
+     * @return number of flushes that called the backend
+     */
+    public synchronized long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     *
+     * @return number of requests that didn't result in a backend call of their
+     *         own because they were merged with others (or already covered by
+     *         pending ones)
+     */
+    public synchronized long getCoalescedCount() {
+        return requestCount - backendRepaintCount;
+    }
+
+    public synchronized void resetStatistics() {
+        requestCount = backendRepaintCount = flushCount = 0;
+    }
+
+}
@@ -0,0 +1,481 @@
+package de.sofd.draw2d.viewer;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import de.sofd.draw2d.viewer.adapters.DrawingObjectViewerAdapter;
+import de.sofd.draw2d.viewer.gc.GC;
+
+/**
+ * Base layer cache of a {@link DrawingViewer} in
+ * {@link DrawingViewer.RenderingMode#TILED TILED} rendering mode (see
+ * {@link DrawingViewer#getTileCache()}).
+ * <p>
+ * The base layer is rendered in square tiles of {@link #TILE_SIZE} pixels,
+ * each an ARGB image, which are kept per "zoom level" and tile coordinates. A
+ * zoom level is defined by the object-to-display transformation minus its
+ * integral translation, so tiles stay valid when the view is panned by whole
+ * pixels, and tiles of earlier zoom levels are reused when going back to
+ * them. Tiles are invalidated per tile area by the same events that
+ * invalidate the {@link DrawingViewer.RenderingMode#LAYERED LAYERED} mode's base layer, on
+ * all zoom levels.
+ * <p>
+ * The memory used by the tile images is limited (see
+ * {@link #setMaxBytes(long)}); when it's exceeded, the least recently painted
+ * tiles are dropped. The cache counts tile hits, misses and evictions.
+ * <p>
+ * Invalid tiles may be rendered in parallel; see
+ * {@link #setRenderingThreadCount(int)}.
+ *
+ * @author olaf
+ */
+public class TileCache extends BaseLayerCache {
+
+    /**
+     * Width and height of a tile, in pixels.
+     */
+    public static final int TILE_SIZE = 256;
+
+    private static final long TILE_BYTES = 4L * TILE_SIZE * TILE_SIZE;
+
+    /**
+     * Extra pixels around an area that's invalidated on a zoom level other
+     * than the current one, to cover things like selection handles whose
+     * size doesn't scale with the zoom.
+     */
+    private static final int LEVEL_MARGIN = DrawingObjectViewerAdapter.HANDLE_BOX_WIDTH + 2;
+
+    /**
+     * Number of evicted tile images kept for reuse.
+     */
+    private static final int MAX_FREE_IMAGES = 4;
+
+    private long maxBytes = 64L * 1024 * 1024;
+
+    private final Map<Level, Level> levels = new HashMap<Level, Level>();
+    // all tiles, least recently painted first
+    private final LinkedHashMap<Tile, Tile> lru = new LinkedHashMap<Tile, Tile>(64, 0.75f, true);
+    private final List<BufferedImage> freeImages = new ArrayList<BufferedImage>();
+
+    private long hitCount, missCount, evictionCount;
+
+    private int renderingThreadCount = 1;
+    private ExecutorService renderingExecutor;
+
+    TileCache(DrawingViewer viewer) {
+        super(viewer);
+    }
+
+    /**
+     * A zoom level: the object-to-display transformation without its integral
+     * translation. "Level coordinates" are display coordinates minus that
+     * integral translation.
+     */
+    private static class Level {
+        final AffineTransform objectToLevel;
+        final Map<Long, Tile> tiles = new HashMap<Long, Tile>();
+
+        Level(AffineTransform objectToDisplay) {
+            objectToLevel = new AffineTransform(objectToDisplay);
+            objectToLevel.preConcatenate(AffineTransform.getTranslateInstance(
+                    -Math.floor(objectToDisplay.getTranslateX()), -Math.floor(objectToDisplay.getTranslateY())));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Level && objectToLevel.equals(((Level) obj).objectToLevel);
+        }
+
+        @Override
+        public int hashCode() {
+            return objectToLevel.hashCode();
+        }
+    }
+
+    private static class Tile {
+        final Level level;
+        final int tx, ty;
+        BufferedImage image;
+        /**
+         * area in need of re-rendering, relative to the tile's upper left
+         * corner. null if the tile is valid.
+         */
+        Rectangle dirty = new Rectangle(0, 0, TILE_SIZE, TILE_SIZE);
+
+        Tile(Level level, int tx, int ty) {
+            this.level = level;
+            this.tx = tx;
+            this.ty = ty;
+        }
+
+        void invalidate(int x, int y, int w, int h) {
+            Rectangle r = new Rectangle(x - tx * TILE_SIZE, y - ty * TILE_SIZE, w, h).intersection(new Rectangle(0, 0, TILE_SIZE, TILE_SIZE));
+            if (r.isEmpty()) {
+                return;
+            }
+            if (null == dirty) {
+                dirty = r;
+            } else {
+                dirty.add(r);
+            }
+        }
+    }
+
+    private static long tileKey(int tx, int ty) {
+        return ((long) tx << 32) | (ty & 0xffffffffL);
+    }
+
+    private static int floorDiv(int a, int b) {
+        int q = a / b;
+        return (a % b != 0 && (a < 0) != (b < 0)) ? q - 1 : q;
+    }
+
+    public synchronized int getRenderingThreadCount() {
+        return renderingThreadCount;
+    }
+
+    /**
+     * Set the number of threads that render invalid tiles. With 1 (the
+     * default), tiles are rendered on the paint thread. With more, the tiles
+     * of a paint that need rendering are rendered in parallel on a pool of
+     * that many threads (owned by this cache), while the paint thread waits
+     * for them. The adapters must support this; see
+     * {@link DrawingObjectViewerAdapter#paintObjectOn(GC)}.
+     *
+     * @param renderingThreadCount
+     *            renderingThreadCount
+     */
+    public synchronized void setRenderingThreadCount(int renderingThreadCount) {
+        if (renderingThreadCount < 1) {
+            throw new IllegalArgumentException("need at least one rendering thread: " + renderingThreadCount);
+        }
+        if (renderingThreadCount != this.renderingThreadCount) {
+            shutdownRenderingExecutor();
+            this.renderingThreadCount = renderingThreadCount;
+        }
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     *
+     * @param maxBytes
+     *            maximum number of bytes used by the tile images. Default is
+     *            64 MB. Tiles needed for a single paint are kept even if they
+     *            exceed this, until the paint is finished.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("negative size: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        evictExcessTiles();
+    }
+
+    /**
+     *
+     * @return number of bytes currently used by the tile images
+     */
+    public synchronized long getUsedBytes() {
+        return TILE_BYTES * lru.size();
+    }
+
+    public synchronized int getTileCount() {
+        return lru.size();
+    }
+
+    /**
+     *
+     * @return number of tiles painted from an existing tile image (possibly
+     *         after re-rendering an invalidated part of it)
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     *
+     * @return number of tiles that had to be created and rendered completely
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     *
+     * @return number of tiles dropped because the memory limit was exceeded
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized void resetStatistics() {
+        hitCount = missCount = evictionCount = 0;
+    }
+
+    @Override
+    synchronized void invalidate(Rectangle disp) {
+        if (lru.isEmpty()) {
+            return;
+        }
+        AffineTransform objToDisp = viewer.getObjectToDisplayTransform();
+        Level current = levels.get(new Level(objToDisp));
+        Rectangle2D objArea = null;
+        for (Level level : levels.values()) {
+            Rectangle r;
+            if (level == current) {
+                r = new Rectangle(disp);
+                r.translate(-(int) Math.floor(objToDisp.getTranslateX()), -(int) Math.floor(objToDisp.getTranslateY()));
+            } else {
+                if (null == objArea) {
+                    objArea = viewer.getDisplayToObjectTransform().createTransformedShape(disp).getBounds2D();
+                }
+                r = level.objectToLevel.createTransformedShape(objArea).getBounds();
+                r.grow(LEVEL_MARGIN, LEVEL_MARGIN);
+            }
+            invalidate(level, r);
+        }
+    }
+
+    private void invalidate(Level level, Rectangle r) {
+        if (r.isEmpty()) {
+            return;
+        }
+        int tx0 = floorDiv(r.x, TILE_SIZE), tx1 = floorDiv(r.x + r.width - 1, TILE_SIZE);
+        int ty0 = floorDiv(r.y, TILE_SIZE), ty1 = floorDiv(r.y + r.height - 1, TILE_SIZE);
+        if ((long) (tx1 - tx0 + 1) * (ty1 - ty0 + 1) > level.tiles.size()) {
+            for (Tile tile : level.tiles.values()) {
+                tile.invalidate(r.x, r.y, r.width, r.height);
+            }
+        } else {
+            for (int ty = ty0; ty <= ty1; ty++) {
+                for (int tx = tx0; tx <= tx1; tx++) {
+                    Tile tile = level.tiles.get(tileKey(tx, ty));
+                    if (null != tile) {
+                        tile.invalidate(r.x, r.y, r.width, r.height);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    synchronized void invalidateAll() {
+        for (Tile tile : lru.keySet()) {
+            tile.dirty = new Rectangle(0, 0, TILE_SIZE, TILE_SIZE);
+        }
+    }
+
+    @Override
+    void transformChanged() {
+        // tiles are kept per zoom level
+    }
+
+    @Override
+    void translated(double dx, double dy) {
+        // ditto; a pan by whole pixels stays on the same level
+    }
+
+    @Override
+    synchronized void paintOn(GC gc, Rectangle clip) {
+        AffineTransform objToDisp = viewer.getObjectToDisplayTransform();
+        Level level = new Level(objToDisp);
+        Level existing = levels.get(level);
+        if (null == existing) {
+            levels.put(level, level);
+        } else {
+            level = existing;
+        }
+        int offsetX = (int) Math.floor(objToDisp.getTranslateX());
+        int offsetY = (int) Math.floor(objToDisp.getTranslateY());
+        int lx = clip.x - offsetX, ly = clip.y - offsetY;
+        int tx0 = floorDiv(lx, TILE_SIZE), tx1 = floorDiv(lx + clip.width - 1, TILE_SIZE);
+        int ty0 = floorDiv(ly, TILE_SIZE), ty1 = floorDiv(ly + clip.height - 1, TILE_SIZE);
+        List<Tile> tiles = new ArrayList<Tile>();
+        List<Tile> dirtyTiles = new ArrayList<Tile>();
+        List<Rectangle> dirtyRects = new ArrayList<Rectangle>();
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                Tile tile = getTile(level, tx, ty);
+                tiles.add(tile);
+                if (null != tile.dirty) {
+                    Rectangle r = new Rectangle(tile.dirty);
+                    r.translate(tx * TILE_SIZE + offsetX, ty * TILE_SIZE + offsetY);
+                    dirtyTiles.add(tile);
+                    dirtyRects.add(r);
+                    tile.dirty = null;
+                }
+            }
+        }
+        if (!dirtyTiles.isEmpty()) {
+            renderTiles(dirtyTiles, dirtyRects, offsetX, offsetY, new RenderSetup(gc));
+        }
+        Graphics2D g2d = gc.getGraphics2D();
+        for (Tile tile : tiles) {
+            g2d.drawImage(tile.image, tile.tx * TILE_SIZE + offsetX, tile.ty * TILE_SIZE + offsetY, null);
+        }
+        evictExcessTiles();
+    }
+
+    private void renderTiles(List<Tile> tiles, final List<Rectangle> rects, final int offsetX, final int offsetY, final RenderSetup setup) {
+        final List<List<DrawingObjectViewerAdapter>> adapters = viewer.getBaseLayerAdapters(rects);
+        int n = tiles.size();
+        if (renderingThreadCount <= 1 || n < 2) {
+            boolean done = false;
+            try {
+                for (int i = 0; i < n; i++) {
+                    Tile tile = tiles.get(i);
+                    renderInto(tile.image, tile.tx * TILE_SIZE + offsetX, tile.ty * TILE_SIZE + offsetY, rects.get(i), setup, adapters.get(i));
+                }
+                done = true;
+            } finally {
+                if (!done) {
+                    invalidateTiles(tiles);
+                }
+            }
+            return;
+        }
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(n);
+        for (int i = 0; i < n; i++) {
+            final Tile tile = tiles.get(i);
+            final int index = i;
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    renderInto(tile.image, tile.tx * TILE_SIZE + offsetX, tile.ty * TILE_SIZE + offsetY,
+                               rects.get(index), setup, adapters.get(index));
+                    return null;
+                }
+            });
+        }
+        List<Future<Object>> results;
+        try {
+            results = getRenderingExecutor().invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            invalidateTiles(tiles);
+            return;
+        }
+        for (Future<Object> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                invalidateTiles(tiles);
+                return;
+            } catch (ExecutionException e) {
+                invalidateTiles(tiles);
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException("tile rendering failed", cause);
+            }
+        }
+    }
+
+    private static void invalidateTiles(List<Tile> tiles) {
+        for (Tile tile : tiles) {
+            tile.dirty = new Rectangle(0, 0, TILE_SIZE, TILE_SIZE);
+        }
+    }
+
+    private ExecutorService getRenderingExecutor() {
+        if (null == renderingExecutor) {
+            renderingExecutor = Executors.newFixedThreadPool(renderingThreadCount, new ThreadFactory() {
+                private int count = 0;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "draw2d tile renderer " + (++count));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return renderingExecutor;
+    }
+
+    private void shutdownRenderingExecutor() {
+        if (null != renderingExecutor) {
+            renderingExecutor.shutdown();
+            renderingExecutor = null;
+        }
+    }
+
+    private Tile getTile(Level level, int tx, int ty) {
+        Long key = tileKey(tx, ty);
+        Tile tile = level.tiles.get(key);
+        if (null != tile) {
+            lru.get(tile);  // mark as recently used
+            hitCount++;
+            return tile;
+        }
+        missCount++;
+        tile = new Tile(level, tx, ty);
+        if (freeImages.isEmpty()) {
+            tile.image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        } else {
+            tile.image = freeImages.remove(freeImages.size() - 1);
+        }
+        level.tiles.put(key, tile);
+        lru.put(tile, tile);
+        return tile;
+    }
+
+    private void evictExcessTiles() {
+        for (Iterator<Tile> it = lru.keySet().iterator(); it.hasNext() && TILE_BYTES * lru.size() > maxBytes;) {
+            Tile tile = it.next();
+            it.remove();
+            removeFromLevel(tile);
+            if (freeImages.size() < MAX_FREE_IMAGES) {
+                freeImages.add(tile.image);
+            } else {
+                tile.image.flush();
+            }
+            tile.image = null;
+            evictionCount++;
+        }
+    }
+
+    private void removeFromLevel(Tile tile) {
+        tile.level.tiles.remove(tileKey(tile.tx, tile.ty));
+        if (tile.level.tiles.isEmpty()) {
+            levels.remove(tile.level);
+        }
+    }
+
+    @Override
+    synchronized void dispose() {
+        shutdownRenderingExecutor();
+        for (Tile tile : lru.keySet()) {
+            tile.image.flush();
+        }
+        for (BufferedImage image : freeImages) {
+            image.flush();
+        }
+        lru.clear();
+        levels.clear();
+        freeImages.clear();
+    }
+
+}
@@ -0,0 +1,184 @@
+package de.sofd.draw2d.viewer;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import de.sofd.draw2d.viewer.adapters.DrawingObjectViewerAdapter;
+import de.sofd.draw2d.viewer.gc.GC;
+
+/**
+ * {@link BaseLayerCache} that keeps the base layer in a single ARGB image
+ * covering the display area painted so far (normally the visible part of the
+ * viewer). Invalid areas are kept in a {@link DirtyRegion}.
+ * <p>
+ * If a paint request's clip extends beyond the covered area, the area is
+ * extended to the union of both if the image is large enough for that, or
+ * else moved over the clip if the image is large enough for the clip. The
+ * rendering of the part the new area has in common with the old one is kept
+ * (shifted within the image if necessary), so after a pan (see
+ * {@link #translated(double, double)}) only the newly exposed parts are
+ * rendered. If the image is too small for the clip, it is re-allocated to
+ * cover the union (or just the clip if that union would be much larger than
+ * the clip) and re-rendered completely.
+ * 
+ * @author olaf
+ */
+class ViewportLayerCache extends BaseLayerCache {
+
+    /**
+     * When the image has to be re-allocated, the covered area is reduced to
+     * the clip if growing it to include the clip would make it larger than
+     * this factor times the clip's area.
+     */
+    static final int MAX_AREA_FACTOR = 4;
+
+    private BufferedImage image;
+    private final Rectangle area = new Rectangle();
+    private final DirtyRegion dirtyRegion = new DirtyRegion();
+
+    ViewportLayerCache(DrawingViewer viewer) {
+        super(viewer);
+    }
+
+    @Override
+    synchronized void invalidate(Rectangle disp) {
+        if (null != image) {
+            Rectangle r = disp.intersection(area);
+            if (!r.isEmpty()) {
+                dirtyRegion.add(r);
+            }
+        }
+    }
+
+    @Override
+    synchronized void invalidateAll() {
+        dirtyRegion.clear();
+        if (null != image) {
+            dirtyRegion.add(area);
+        }
+    }
+
+    @Override
+    synchronized void paintOn(GC gc, Rectangle clip) {
+        if (null == image) {
+            image = new BufferedImage(clip.width, clip.height, BufferedImage.TYPE_INT_ARGB_PRE);
+            area.setBounds(clip);
+            dirtyRegion.clear();
+            dirtyRegion.add(area);
+        } else if (!area.contains(clip)) {
+            Rectangle newArea = area.union(clip);
+            if (!fitsImage(newArea)) {
+                if (fitsImage(clip)) {
+                    // slide the area over the clip
+                    newArea = new Rectangle(area.x, area.y, Math.max(area.width, clip.width), Math.max(area.height, clip.height));
+                    if (clip.x < newArea.x) {
+                        newArea.x = clip.x;
+                    } else if (clip.x + clip.width > newArea.x + newArea.width) {
+                        newArea.x = clip.x + clip.width - newArea.width;
+                    }
+                    if (clip.y < newArea.y) {
+                        newArea.y = clip.y;
+                    } else if (clip.y + clip.height > newArea.y + newArea.height) {
+                        newArea.y = clip.y + clip.height - newArea.height;
+                    }
+                } else if ((long) newArea.width * newArea.height > MAX_AREA_FACTOR * (long) clip.width * clip.height) {
+                    newArea = new Rectangle(clip);
+                }
+            }
+            if (fitsImage(newArea)) {
+                moveArea(newArea);
+            } else {
+                image.flush();
+                image = new BufferedImage(newArea.width, newArea.height, BufferedImage.TYPE_INT_ARGB_PRE);
+                area.setBounds(newArea);
+                dirtyRegion.clear();
+                dirtyRegion.add(area);
+            }
+        }
+        List<Rectangle> dirtyRects = dirtyRegion.getRectangles();
+        if (!dirtyRects.isEmpty()) {
+            RenderSetup setup = new RenderSetup(gc);
+            List<List<DrawingObjectViewerAdapter>> adapters = viewer.getBaseLayerAdapters(dirtyRects);
+            for (int i = 0; i < dirtyRects.size(); i++) {
+                renderInto(image, area.x, area.y, dirtyRects.get(i), setup, adapters.get(i));
+            }
+        }
+        dirtyRegion.clear();
+        Graphics2D g2d = gc.getGraphics2D();
+        g2d.drawImage(image,
+                      clip.x, clip.y, clip.x + clip.width, clip.y + clip.height,
+                      clip.x - area.x, clip.y - area.y, clip.x - area.x + clip.width, clip.y - area.y + clip.height,
+                      null);
+    }
+
+    private boolean fitsImage(Rectangle r) {
+        return r.width <= image.getWidth() && r.height <= image.getHeight();
+    }
+
+    /**
+     * Make the image cover newArea instead of area, keeping the rendering of
+     * the part both have in common and marking the rest dirty.
+     */
+    private void moveArea(Rectangle newArea) {
+        Rectangle common = area.intersection(newArea);
+        if (common.isEmpty()) {
+            dirtyRegion.clear();
+            dirtyRegion.add(newArea);
+            area.setBounds(newArea);
+            return;
+        }
+        if (area.x != newArea.x || area.y != newArea.y) {
+            Graphics2D g2d = image.createGraphics();
+            try {
+                g2d.setComposite(AlphaComposite.Src);
+                g2d.copyArea(common.x - area.x, common.y - area.y, common.width, common.height,
+                             area.x - newArea.x, area.y - newArea.y);
+            } finally {
+                g2d.dispose();
+            }
+        }
+        List<Rectangle> oldDirtyRects = dirtyRegion.getRectangles();
+        dirtyRegion.clear();
+        for (Rectangle r : oldDirtyRects) {
+            dirtyRegion.add(r.intersection(newArea));
+        }
+        // the parts of newArea outside common: full-width strips above and
+        // below it, and the parts left and right of it in between
+        dirtyRegion.add(new Rectangle(newArea.x, newArea.y, newArea.width, common.y - newArea.y));
+        dirtyRegion.add(new Rectangle(newArea.x, common.y + common.height, newArea.width,
+                                      newArea.y + newArea.height - common.y - common.height));
+        dirtyRegion.add(new Rectangle(newArea.x, common.y, common.x - newArea.x, common.height));
+        dirtyRegion.add(new Rectangle(common.x + common.width, common.y,
+                                      newArea.x + newArea.width - common.x - common.width, common.height));
+        area.setBounds(newArea);
+    }
+
+    @Override
+    synchronized void translated(double dx, double dy) {
+        if (null == image) {
+            return;
+        }
+        if (!DrawingViewer.isWholePixels(dx) || !DrawingViewer.isWholePixels(dy)) {
+            invalidateAll();
+            return;
+        }
+        // the rendered content moves along with the display; the next paint
+        // moves the area back over the visible part (see moveArea())
+        int idx = (int) Math.rint(dx), idy = (int) Math.rint(dy);
+        area.translate(idx, idy);
+        dirtyRegion.translate(idx, idy);
+    }
+
+    @Override
+    synchronized void dispose() {
+        if (null != image) {
+            image.flush();
+            image = null;
+        }
+        dirtyRegion.clear();
+    }
+
+}
@@ -3,12 +3,19 @@ package de.sofd.draw2d.viewer.adapters;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Paint;
 import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import de.sofd.draw2d.DrawingObject;
 import de.sofd.draw2d.Location;
@@ -70,6 +77,54 @@ public class DrawingObjectViewerAdapter {
     private final DrawingObject drawingObject;
 
     public static final int HANDLE_BOX_WIDTH = 6;
+
+    /**
+     * Stroke for drawing object outlines: thinnest possible lines, regardless
+     * of the transformation.
+     */
+    protected static final Stroke OUTLINE_STROKE = new BasicStroke(0);
+
+    /**
+     * Stroke for the dashed rectangle of the default selection visualization.
+     */
+    protected static final Stroke SELECTION_STROKE =
+        new BasicStroke(0, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER, 10.0f, new float[]{2,4}, 0.0f);
+
+    /**
+     * Per-thread scratch buffers for
+     * {@link #paintSelectionVisualizationOn(GC, boolean)} and the default
+     * handles, reused for all adapters.
+     */
+    private static class SelectionPaintBuffers {
+        double[] points = new double[16];
+        final Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, 5);
+        // for reading the object's location without copying it into a new Location
+        final Location location = new Location();
+    }
+
+    private static final ThreadLocal<SelectionPaintBuffers> selectionPaintBuffers = new ThreadLocal<SelectionPaintBuffers>() {
+        @Override
+        protected SelectionPaintBuffers initialValue() {
+            return new SelectionPaintBuffers();
+        }
+    };
+
+    /**
+     * Adapter classes that override neither {@link #getHandleCount()} nor
+     * {@link #getHandle(int)}, i.e. whose handles are the corners of the
+     * object's location, by class.
+     */
+    private static final Map<Class<?>, Boolean> defaultHandlesByClass =
+        Collections.synchronizedMap(new WeakHashMap<Class<?>, Boolean>());
+
+    // cached results of getObjectShape() / getObjectShapeDisp()
+    private Shape objectShape, objectShapeDisp;
+    private int objectShapeDispTransformVersion;
+    // cached result of getBounds2DDisp()
+    private Rectangle bounds2DDisp;
+    private int bounds2DDispTransformVersion;
+    // per-instance cache of defaultHandlesByClass.get(getClass())
+    private Boolean defaultHandles;
     
     public DrawingObjectViewerAdapter(DrawingViewer viewer, DrawingObject drawingObject) {
         this.viewer = viewer;
@@ -95,6 +150,20 @@ public class DrawingObjectViewerAdapter {
      * You should override, or your objects will be invisible unless they're
      * selected.
      * 
+     * <p>
+     * Thread safety: When the viewer renders its base layer on several
+     * threads (see {@link DrawingViewer.RenderingMode#TILED} and
+     * {@link de.sofd.draw2d.viewer.TileCache#setRenderingThreadCount(int)}),
+     * this method and {@link #paintSelectionVisualizationOn(GC, boolean)}
+     * (with isSelected == false) may be called concurrently from several
+     * threads, for the same adapter with different GCs. The drawing and the
+     * viewer aren't changed while that happens (the paint thread waits for
+     * the rendering threads), so reading the object and the viewer's
+     * transformation is safe, but any state the adapter itself changes
+     * during painting, like cached geometry, must be synchronized. The
+     * shape caches of this class ({@link #getObjectShape()},
+     * {@link #getObjectShapeDisp()}) are.
+     * 
      * @param gc the GC to draw on. IMPORTANT: The implementation MUST ensure that gc's
      *        state after this method returns is the same as before it was called.
      */
@@ -102,6 +171,88 @@ public class DrawingObjectViewerAdapter {
         
     }
 
+    /**
+     * Create the outline of this adapter's DrawingObject, in object
+     * coordinates, for {@link #getObjectShape()}. The default implementation
+     * returns null, meaning the adapter doesn't paint its object as a single
+     * shape. Adapters that do should override this and have
+     * {@link #paintObjectOn(GC)} call {@link #paintObjectShapeOn(GC)}.
+     * 
+     * @return the shape. Must not be modified afterwards.
+     */
+    protected Shape createObjectShape() {
+        return null;
+    }
+
+    /**
+     * 
+     * @return result of {@link #createObjectShape()}, cached until the next
+     *         {@link #onDrawingObjectEvent(DrawingObjectEvent)}
+     */
+    protected synchronized Shape getObjectShape() {
+        if (null == objectShape) {
+            objectShape = createObjectShape();
+        }
+        return objectShape;
+    }
+
+    /**
+     * 
+     * @return {@link #getObjectShape()} transformed to display coordinates;
+     *         cached until the next
+     *         {@link #onDrawingObjectEvent(DrawingObjectEvent)} or change of
+     *         the viewer's object-to-display transformation. Null if
+     *         getObjectShape() is null.
+     */
+    protected synchronized Shape getObjectShapeDisp() {
+        int transformVersion = getViewer().getObjectToDisplayTransformVersion();
+        if (null == objectShapeDisp || objectShapeDispTransformVersion != transformVersion) {
+            Shape shape = getObjectShape();
+            objectShapeDisp = (null == shape ? null : getViewer().getObjectToDisplayTransform().createTransformedShape(shape));
+            objectShapeDispTransformVersion = transformVersion;
+        }
+        return objectShapeDisp;
+    }
+
+    /**
+     * Drop the cached shapes and bounds, forcing {@link #getObjectShape()},
+     * {@link #getObjectShapeDisp()} and {@link #getBounds2DDisp()} to
+     * recompute them next time. Called by
+     * {@link #onDrawingObjectEvent(DrawingObjectEvent)}; subclasses that keep
+     * more state derived from the object may override (and call super).
+     */
+    protected synchronized void invalidateCachedGeometry() {
+        objectShape = null;
+        objectShapeDisp = null;
+        bounds2DDisp = null;
+    }
+
+    /**
+     * Paint {@link #getObjectShapeDisp()} as an outline in the object's color,
+     * with the {@link #OUTLINE_STROKE}. gc's paint and stroke are restored
+     * afterwards.
+     * 
+     * @param gc
+     *            gc
+     */
+    protected void paintObjectShapeOn(GC gc) {
+        Shape shape = getObjectShapeDisp();
+        if (null == shape) {
+            return;
+        }
+        Graphics2D g2d = gc.getGraphics2D();
+        Paint oldPaint = g2d.getPaint();
+        Stroke oldStroke = g2d.getStroke();
+        try {
+            g2d.setPaint(getDrawingObject().getColor());
+            g2d.setStroke(OUTLINE_STROKE);
+            g2d.draw(shape);
+        } finally {
+            g2d.setPaint(oldPaint);
+            g2d.setStroke(oldStroke);
+        }
+    }
+
     /**
      * Paint the "selection visualization" for the {@link #getDrawingObject()}
      * of this adapter. This is a separate method because DrawingViewer wants to
@@ -126,25 +277,109 @@ public class DrawingObjectViewerAdapter {
             if (null == g2d) {
                 throw new IllegalStateException("Don't know how to paint on a GC that doesn't hold a Graphics2D. Override me!");
             }
-            g2d.setPaint(Color.GREEN);
-            // by default, draw all the object's handles
+            // collect the handle positions and the corners of the bounding
+            // box in one buffer and transform them to display coordinates in
+            // one go
+            SelectionPaintBuffers buffers = selectionPaintBuffers.get();
             int count = getHandleCount();
-            for (int i=0; i<count; ++i) {
-                MouseHandle handle = getHandle(i);
-                if (null != handle) { // should always be the case...
-                    Point2D posn = getViewer().objToDisplay(handle.getPosition());
-                    g2d.fillRect((int) (posn.getX() - HANDLE_BOX_WIDTH/2),
-                                 (int) (posn.getY() - HANDLE_BOX_WIDTH/2),
+            if (buffers.points.length < 2 * count + 8) {
+                buffers.points = new double[2 * count + 8];
+            }
+            double[] pts = buffers.points;
+            count = copyHandlePositions(pts);
+            Rectangle2D bounds = getDrawingObject().getBounds2D();
+            int c = 2 * count;
+            pts[c] = bounds.getMinX();     pts[c + 1] = bounds.getMinY();
+            pts[c + 2] = bounds.getMaxX(); pts[c + 3] = bounds.getMinY();
+            pts[c + 4] = bounds.getMaxX(); pts[c + 5] = bounds.getMaxY();
+            pts[c + 6] = bounds.getMinX(); pts[c + 7] = bounds.getMaxY();
+            getViewer().getObjectToDisplayTransform().transform(pts, 0, pts, 0, count + 4);
+
+            Paint oldPaint = g2d.getPaint();
+            Stroke oldStroke = g2d.getStroke();
+            try {
+                g2d.setPaint(Color.GREEN);
+                // by default, draw all the object's handles
+                for (int i = 0; i < c; i += 2) {
+                    g2d.fillRect((int) (pts[i] - HANDLE_BOX_WIDTH/2),
+                                 (int) (pts[i + 1] - HANDLE_BOX_WIDTH/2),
                                  HANDLE_BOX_WIDTH,
                                  HANDLE_BOX_WIDTH);
                 }
+
+                //... and a dashed rectangle around the object
+                g2d.setStroke(SELECTION_STROKE);
+                // transform the shape, not g2d, so the stroke (dash segment lenghts) isn't transformed as well
+                Path2D.Double path = buffers.path;
+                path.reset();
+                path.moveTo(pts[c], pts[c + 1]);
+                path.lineTo(pts[c + 2], pts[c + 3]);
+                path.lineTo(pts[c + 4], pts[c + 5]);
+                path.lineTo(pts[c + 6], pts[c + 7]);
+                path.lineTo(pts[c], pts[c + 1]);
+                path.closePath();
+                g2d.draw(path);
+            } finally {
+                g2d.setPaint(oldPaint);
+                g2d.setStroke(oldStroke);
             }
+        }
+    }
 
-            //... and a dashed rectangle around the object
-            g2d.setStroke(new BasicStroke(0, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER, 10.0f, new float[]{2,4}, 0.0f));
-            // transform the shape, not g2d, so the stroke (dash segment lenghts) isn't transformed as well
-            g2d.draw(getViewer().getObjectToDisplayTransform().createTransformedShape(getDrawingObject().getBounds2D()));
+    /**
+     * Write the positions of the object's handles (see
+     * {@link #getHandleCount()} / {@link #getHandle(int)}), in object
+     * coordinates, into dst, x and y interleaved. Used for painting the
+     * handles without creating a {@link MouseHandle} per handle. The default
+     * implementation reads the corners of the object's location directly, or,
+     * if a subclass overrides getHandleCount() or getHandle(), asks the
+     * handles. Subclasses with many handles may override this.
+     * 
+     * @param dst
+     *            destination array. Has room for at least 2 *
+     *            {@link #getHandleCount()} elements.
+     * @return the number of positions written: getHandleCount(), minus any
+     *         null handles
+     */
+    protected int copyHandlePositions(double[] dst) {
+        if (hasDefaultHandles()) {
+            Location loc = getDrawingObject().getLocation(selectionPaintBuffers.get().location);
+            dst[0] = loc.getX1(); dst[1] = loc.getY1();
+            dst[2] = loc.getX2(); dst[3] = loc.getY1();
+            dst[4] = loc.getX2(); dst[5] = loc.getY2();
+            dst[6] = loc.getX1(); dst[7] = loc.getY2();
+            return 4;
         }
+        int count = getHandleCount();
+        int n = 0;
+        for (int i = 0; i < count; ++i) {
+            MouseHandle handle = getHandle(i);
+            if (null != handle) { // should always be the case...
+                Point2D posn = handle.getPosition();
+                dst[n++] = posn.getX();
+                dst[n++] = posn.getY();
+            }
+        }
+        return n / 2;
+    }
+
+    private boolean hasDefaultHandles() {
+        Boolean result = defaultHandles;
+        if (null == result) {
+            Class<?> c = getClass();
+            result = defaultHandlesByClass.get(c);
+            if (null == result) {
+                try {
+                    result = (c.getMethod("getHandleCount").getDeclaringClass() == DrawingObjectViewerAdapter.class &&
+                              c.getMethod("getHandle", int.class).getDeclaringClass() == DrawingObjectViewerAdapter.class);
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalStateException(e);  // can't happen
+                }
+                defaultHandlesByClass.put(c, result);
+            }
+            defaultHandles = result;
+        }
+        return result;
     }
 
     /**
@@ -172,18 +407,50 @@ public class DrawingObjectViewerAdapter {
      * (or just override {@link #intersectsDisp(Rectangle2D)} to always return
      * true, if that doesn't hinder performance too much). If the returned
      * rectangle is too small, you might see artifacts.
+     * <p>
+     * N.B.: When painting, the viewer looks up the objects to paint in the
+     * drawing's spatial index, so only objects whose bounding box lies within
+     * {@link #HANDLE_BOX_WIDTH}/2 + 2 display pixels of the painted area are
+     * considered at all. Adapters that paint farther outside the bounding box
+     * than that aren't supported.
+     * <p>
+     * The default implementation caches the result until the next
+     * {@link #onDrawingObjectEvent(DrawingObjectEvent)} or change of the
+     * viewer's object-to-display transformation.
      * 
-     * @return
+     * @return the rectangle. Must not be modified by the caller.
      */
-    public Rectangle2D getBounds2DDisp() {
-        Rectangle result = getViewer().getObjectToDisplayTransform()
-                                            .createTransformedShape(getDrawingObject().getBounds2D())
-                                                .getBounds();
-        result.setRect(result.getMinX() - HANDLE_BOX_WIDTH/2 - 1,
-                       result.getMinY() - HANDLE_BOX_WIDTH/2 - 1,
-                       result.getWidth() + HANDLE_BOX_WIDTH + 1,
-                       result.getHeight() + HANDLE_BOX_WIDTH + 1);
-        return result;
+    public synchronized Rectangle2D getBounds2DDisp() {
+        int transformVersion = getViewer().getObjectToDisplayTransformVersion();
+        if (null == bounds2DDisp || bounds2DDispTransformVersion != transformVersion) {
+            Rectangle result = transformBounds(getViewer().getObjectToDisplayTransform(),
+                                               getDrawingObject().getBounds2D());
+            result.setRect(result.getMinX() - HANDLE_BOX_WIDTH/2 - 1,
+                           result.getMinY() - HANDLE_BOX_WIDTH/2 - 1,
+                           result.getWidth() + HANDLE_BOX_WIDTH + 2,
+                           result.getHeight() + HANDLE_BOX_WIDTH + 2);
+            bounds2DDisp = result;
+            bounds2DDispTransformVersion = transformVersion;
+        }
+        return bounds2DDisp;
+    }
+
+    /**
+     * 
+     * @return the integer bounds of r transformed by t. Transformations
+     *         without rotation or shear map r's corners directly instead of
+     *         going through a transformed shape.
+     */
+    private static Rectangle transformBounds(AffineTransform t, Rectangle2D r) {
+        if (t.getShearX() != 0 || t.getShearY() != 0) {
+            return t.createTransformedShape(r).getBounds();
+        }
+        double x1 = t.getScaleX() * r.getMinX() + t.getTranslateX();
+        double x2 = t.getScaleX() * r.getMaxX() + t.getTranslateX();
+        double y1 = t.getScaleY() * r.getMinY() + t.getTranslateY();
+        double y2 = t.getScaleY() * r.getMaxY() + t.getTranslateY();
+        return new Rectangle2D.Double(Math.min(x1, x2), Math.min(y1, y2),
+                                      Math.abs(x2 - x1), Math.abs(y2 - y1)).getBounds();
     }
     
     protected void scheduleSelfRepaint() {
@@ -192,10 +459,12 @@ public class DrawingObjectViewerAdapter {
     
     /**
      * Callback that's called by the viewer if any {@link DrawingObjectEvent}
-     * has occured on this adapter's DrawingObject. By default, just schedule a
+     * has occured on this adapter's DrawingObject. By default, drop the cached
+     * geometry (see {@link #invalidateCachedGeometry()}) and schedule a
      * repaint. Subclasses may override.
      */
     public void onDrawingObjectEvent(DrawingObjectEvent e) {
+        invalidateCachedGeometry();
         /*
          * N.B.: If this is a before-change DrawingObjectLocationChangeEvent,
          * the source DrawingObject (lce.getSource()) is still located at its
@@ -235,7 +504,7 @@ public class DrawingObjectViewerAdapter {
         }
         @Override
         public Point2D getPosition() {
-            return getDrawingObject().getLocation().getPt(nr);
+            return getDrawingObject().getLocation(selectionPaintBuffers.get().location).getPt(nr);
         }
         @Override
         public void setPosition(Point2D posn) {
@@ -1,16 +1,56 @@
 package de.sofd.draw2d.viewer.adapters;
 
-import java.awt.BasicStroke;
-import java.awt.Graphics2D;
-import java.awt.geom.Line2D;
-import java.awt.geom.Point2D;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import de.sofd.draw2d.PolygonObject;
 import de.sofd.draw2d.viewer.DrawingViewer;
 import de.sofd.draw2d.viewer.gc.GC;
 
+/**
+ * Viewer adapter for {@link PolygonObject}s.
+ * <p>
+ * Polygons with many points are painted at a level of detail that fits the
+ * zoom: when zoomed out, a simplified version of the polygon (Douglas-Peucker)
+ * whose points deviate from the original outline by less than one display
+ * pixel is painted instead of the full one. The simplification is computed
+ * once per polygon shape and cached, as are the simplified versions for the
+ * zoom levels used.
+ */
 public class PolygonObjectViewerAdapter extends DrawingObjectViewerAdapter {
 
+    /**
+     * Polygons with fewer points are always painted in full detail.
+     */
+    public static final int LOD_MIN_POINTS = 64;
+
+    /**
+     * Maximum number of simplified versions kept per polygon.
+     */
+    private static final int MAX_LOD_SHAPES = 4;
+
+    /**
+     * Douglas-Peucker significance of each point: the point is part of the
+     * simplification for all tolerances below this value. null if not
+     * computed yet.
+     */
+    private double[] pointSignificance;
+    // simplified shapes (object coordinates) by tolerance exponent (tolerance = 2^exponent)
+    private final Map<Integer, Shape> lodShapes = new LinkedHashMap<Integer, Shape>(MAX_LOD_SHAPES + 1, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Shape> eldest) {
+            return size() > MAX_LOD_SHAPES;
+        }
+    };
+    private Shape lodShapeDisp;
+    private int lodShapeDispTransformVersion;
+
     public PolygonObjectViewerAdapter(DrawingViewer viewer, PolygonObject drawingObject) {
         super(viewer, drawingObject);
     }
@@ -19,26 +59,205 @@ public class PolygonObjectViewerAdapter extends DrawingObjectViewerAdapter {
     public PolygonObject getDrawingObject() {
         return (PolygonObject) super.getDrawingObject();
     }
-    
+
     @Override
     public void paintObjectOn(GC gc) {
-        Graphics2D g2d = (Graphics2D) gc.getGraphics2D().create();
-        g2d.setPaint(getDrawingObject().getColor());
-        g2d.transform(getViewer().getObjectToDisplayTransform());
-        g2d.setStroke(new BasicStroke(0));
-        int ptCount = getDrawingObject().getPointCount();
+        paintObjectShapeOn(gc);
+    }
+
+    @Override
+    protected Shape createObjectShape() {
+        PolygonObject poly = getDrawingObject();
+        int ptCount = poly.getPointCount();
+        Path2D.Double result = new Path2D.Double(Path2D.WIND_EVEN_ODD, ptCount + 1);
         if (ptCount > 1) {
-            Point2D startPt = getDrawingObject().getPoint(0);
-            Point2D prevPt = (Point2D) startPt.clone();
+            result.moveTo(poly.getX(0), poly.getY(0));
             for (int i = 1; i < ptCount; ++i) {
-                Point2D nextPt = getDrawingObject().getPoint(i);
-                g2d.draw(new Line2D.Double(prevPt, nextPt));
-                prevPt = nextPt;
+                result.lineTo(poly.getX(i), poly.getY(i));
+            }
+            if (poly.isClosed()) {
+                result.closePath();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Polygons with at least {@link #LOD_MIN_POINTS} points: The outline,
+     * simplified such that it deviates less than one pixel from the full one
+     * under the current object-to-display transformation, in display
+     * coordinates. Cached like the full one.
+     */
+    @Override
+    protected synchronized Shape getObjectShapeDisp() {
+        if (getDrawingObject().getPointCount() < LOD_MIN_POINTS) {
+            return super.getObjectShapeDisp();
+        }
+        int transformVersion = getViewer().getObjectToDisplayTransformVersion();
+        if (null == lodShapeDisp || lodShapeDispTransformVersion != transformVersion) {
+            AffineTransform t = getViewer().getObjectToDisplayTransform();
+            lodShapeDisp = t.createTransformedShape(getLodShape(1.0 / getMaxScale(t)));
+            lodShapeDispTransformVersion = transformVersion;
+        }
+        return lodShapeDisp;
+    }
+
+    @Override
+    protected synchronized void invalidateCachedGeometry() {
+        super.invalidateCachedGeometry();
+        pointSignificance = null;
+        lodShapes.clear();
+        lodShapeDisp = null;
+    }
+
+    /**
+     *
+     * @param maxError
+     *            maximum distance, in object coordinates, of the polygon's
+     *            points from the returned outline
+     * @return the polygon's outline with as many points left out as the
+     *         tolerance allows, in object coordinates. The tolerance is
+     *         rounded down to a power of two so that similar zoom levels share
+     *         the result.
+     */
+    protected synchronized Shape getLodShape(double maxError) {
+        if (!(maxError > 0) || Double.isInfinite(maxError)) {
+            return getObjectShape();
+        }
+        int exponent = (int) Math.floor(Math.log(maxError) / Math.log(2));
+        Shape result = lodShapes.get(exponent);
+        if (null == result) {
+            result = createLodShape(Math.pow(2, exponent));
+            lodShapes.put(exponent, result);
+        }
+        return result;
+    }
+
+    private Shape createLodShape(double tolerance) {
+        PolygonObject poly = getDrawingObject();
+        int ptCount = poly.getPointCount();
+        if (null == pointSignificance) {
+            pointSignificance = computePointSignificance(poly.copyPoints(null), ptCount);
+        }
+        int keptCount = 0;
+        for (int i = 0; i < ptCount; i++) {
+            if (pointSignificance[i] > tolerance) {
+                keptCount++;
+            }
+        }
+        if (keptCount == ptCount) {
+            return getObjectShape();
+        }
+        Path2D.Double result = new Path2D.Double(Path2D.WIND_EVEN_ODD, keptCount + 1);
+        boolean first = true;
+        for (int i = 0; i < ptCount; i++) {
+            if (pointSignificance[i] > tolerance) {
+                if (first) {
+                    result.moveTo(poly.getX(i), poly.getY(i));
+                    first = false;
+                } else {
+                    result.lineTo(poly.getX(i), poly.getY(i));
+                }
+            }
+        }
+        if (poly.isClosed()) {
+            result.closePath();
+        }
+        return result;
+    }
+
+    /**
+     * Douglas-Peucker, run once for all tolerances: For each point, compute
+     * the largest tolerance for which it would still be kept, i.e. its
+     * distance from the segment it splits, capped by the corresponding value
+     * of the point that split off the enclosing range. The first and last
+     * points are always kept.
+     *
+     * @param coords
+     *            coordinates, x and y interleaved
+     * @param n
+     *            number of points
+     * @return the significance of each point
+     */
+    static double[] computePointSignificance(double[] coords, int n) {
+        double[] result = new double[n];
+        if (n == 0) {
+            return result;
+        }
+        result[0] = result[n - 1] = Double.POSITIVE_INFINITY;
+        // explicit stack of (from, to, cap) ranges instead of recursion, for long polygons
+        int[] rangeStack = new int[64];
+        double[] capStack = new double[32];
+        int top = 0;
+        if (n > 2) {
+            rangeStack[0] = 0;
+            rangeStack[1] = n - 1;
+            capStack[0] = Double.POSITIVE_INFINITY;
+            top = 1;
+        }
+        while (top > 0) {
+            top--;
+            int from = rangeStack[2 * top], to = rangeStack[2 * top + 1];
+            double cap = capStack[top];
+            int maxIndex = -1;
+            double maxDist = -1;
+            for (int i = from + 1; i < to; i++) {
+                double d = segmentDistanceSq(coords, i, from, to);
+                if (d > maxDist) {
+                    maxDist = d;
+                    maxIndex = i;
+                }
+            }
+            double significance = Math.min(Math.sqrt(maxDist), cap);
+            result[maxIndex] = significance;
+            if (top + 2 > capStack.length) {
+                capStack = Arrays.copyOf(capStack, 2 * capStack.length);
+                rangeStack = Arrays.copyOf(rangeStack, 2 * rangeStack.length);
+            }
+            if (maxIndex - from > 1) {
+                rangeStack[2 * top] = from;
+                rangeStack[2 * top + 1] = maxIndex;
+                capStack[top] = significance;
+                top++;
             }
-            if (getDrawingObject().isClosed()) {
-                g2d.draw(new Line2D.Double(prevPt, startPt));
+            if (to - maxIndex > 1) {
+                rangeStack[2 * top] = maxIndex;
+                rangeStack[2 * top + 1] = to;
+                capStack[top] = significance;
+                top++;
             }
         }
+        return result;
+    }
+
+    /**
+     * squared distance of point i from the line segment from point a to point b
+     */
+    private static double segmentDistanceSq(double[] coords, int i, int a, int b) {
+        double px = coords[2 * i], py = coords[2 * i + 1];
+        double ax = coords[2 * a], ay = coords[2 * a + 1];
+        double dx = coords[2 * b] - ax, dy = coords[2 * b + 1] - ay;
+        double lenSq = dx * dx + dy * dy;
+        double u = (lenSq == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lenSq);
+        if (u < 0) {
+            u = 0;
+        } else if (u > 1) {
+            u = 1;
+        }
+        double ex = ax + u * dx - px, ey = ay + u * dy - py;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     *
+     * @return the largest factor by which t stretches any distance, i.e. the
+     *         largest singular value of its linear part
+     */
+    private static double getMaxScale(AffineTransform t) {
+        double a = t.getScaleX(), b = t.getShearX(), c = t.getShearY(), d = t.getScaleY();
+        double s = a * a + b * b + c * c + d * d;
+        double det = a * d - b * c;
+        return Math.sqrt((s + Math.sqrt(Math.max(0, s * s - 4 * det * det))) / 2);
     }
 
 }
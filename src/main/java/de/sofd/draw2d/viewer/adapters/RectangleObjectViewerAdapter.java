@@ -1,7 +1,6 @@
 package de.sofd.draw2d.viewer.adapters;
 
-import java.awt.BasicStroke;
-import java.awt.Graphics2D;
+import java.awt.Shape;
 
 import de.sofd.draw2d.RectangleObject;
 import de.sofd.draw2d.viewer.DrawingViewer;
@@ -20,11 +19,12 @@ public class RectangleObjectViewerAdapter extends DrawingObjectViewerAdapter {
     
     @Override
     public void paintObjectOn(GC gc) {
-        Graphics2D g2d = (Graphics2D) gc.getGraphics2D().create();
-        g2d.setPaint(getDrawingObject().getColor());
-        g2d.transform(getViewer().getObjectToDisplayTransform());
-        g2d.setStroke(new BasicStroke(0));
-        g2d.draw(getDrawingObject().getBounds2D());
+        paintObjectShapeOn(gc);
+    }
+
+    @Override
+    protected Shape createObjectShape() {
+        return getDrawingObject().getBounds2D();
     }
 
 }
@@ -0,0 +1,38 @@
+package de.sofd.draw2d.viewer.backend;
+
+/**
+ * Optional extension of {@link DrawingViewerBackend} for backends that can
+ * shift the pixels currently displayed, like a scrolling viewport does.
+ * <p>
+ * When the viewer's object-to-display transformation changes only by a
+ * translation of whole pixels (i.e. the view is panned), a viewer with a
+ * ScrollingDrawingViewerBackend calls {@link #scroll(int, int)} instead of
+ * requesting a full repaint, so only the area exposed by the shift needs to
+ * be repainted.
+ * 
+ * @author olaf
+ */
+public interface ScrollingDrawingViewerBackend extends DrawingViewerBackend {
+
+    /**
+     * Called by the currently attached viewer when its whole display content
+     * has moved by (dx, dy) pixels. The backend should shift the pixels it
+     * currently displays accordingly (e.g. using
+     * {@link java.awt.Graphics#copyArea(int, int, int, int, int, int)}) and
+     * request painting of the areas that were exposed by the shift, i.e. that
+     * have no shifted pixels now; the viewer doesn't know the extent of the
+     * display, so it can't do that itself. Repaint requests that the viewer
+     * hasn't passed on to the backend yet are shifted by the viewer; repaint
+     * requests the backend has received, but not yet processed, refer to the
+     * pixels before the shift.
+     * 
+     * @param dx
+     *            horizontal shift, in pixels
+     * @param dy
+     *            vertical shift, in pixels
+     * @return true if the pixels were shifted. If false, the viewer falls back
+     *         to requesting a full repaint.
+     */
+    boolean scroll(int dx, int dy);
+
+}
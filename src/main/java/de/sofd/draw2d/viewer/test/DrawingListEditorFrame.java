@@ -29,6 +29,7 @@ import de.sofd.draw2d.RectangleObject;
 import de.sofd.draw2d.event.ChangeRejectedException;
 import de.sofd.draw2d.event.DrawingListener;
 import de.sofd.draw2d.event.DrawingObjectAddOrMoveEvent;
+import de.sofd.draw2d.event.DrawingObjectBulkChangeEvent;
 import de.sofd.draw2d.event.DrawingObjectEvent;
 import de.sofd.draw2d.event.DrawingObjectLocationChangeEvent;
 import de.sofd.draw2d.event.DrawingObjectRemoveEvent;
@@ -326,7 +327,7 @@ public class DrawingListEditorFrame extends JFrame {
             public void itemStateChanged(ItemEvent e) {
                 JCheckBox src = (JCheckBox) e.getSource();
                 if (src.isSelected()) {
-                    drawing.addDrawingListener(xmaxBoundaryEnforcer);
+                    drawing.addDrawingListener(DrawingObjectLocationChangeEvent.class, xmaxBoundaryEnforcer);
                 } else {
                     drawing.removeDrawingListener(xmaxBoundaryEnforcer);
                 }
@@ -337,7 +338,7 @@ public class DrawingListEditorFrame extends JFrame {
             public void itemStateChanged(ItemEvent e) {
                 JCheckBox src = (JCheckBox) e.getSource();
                 if (src.isSelected()) {
-                    drawing.addDrawingListener(removeOnCreationHandler);
+                    drawing.addDrawingListener(DrawingObjectTagChangeEvent.class, removeOnCreationHandler);
                 } else {
                     drawing.removeDrawingListener(removeOnCreationHandler);
                 }
@@ -421,6 +422,10 @@ public class DrawingListEditorFrame extends JFrame {
                 if (re.isAfterChange()) {
                     drawingEditorListModel.remove(re.getIndex());
                 }
+            } else if (e instanceof DrawingObjectBulkChangeEvent) {
+                if (((DrawingObjectBulkChangeEvent) e).isAfterChange()) {
+                    reinitEditorList();
+                }
             } else if (e instanceof DrawingObjectEvent) {
                 drawingEditorList.repaint();
                 if (e instanceof DrawingObjectTagChangeEvent) {
@@ -0,0 +1,116 @@
+package de.sofd.draw2d.viewer.test;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.EventObject;
+import java.util.List;
+
+import de.sofd.draw2d.Drawing;
+import de.sofd.draw2d.DrawingObject;
+import de.sofd.draw2d.RectangleObject;
+import de.sofd.draw2d.event.DrawingEvent;
+import de.sofd.draw2d.event.DrawingListener;
+import de.sofd.draw2d.event.DrawingObjectEvent;
+import de.sofd.draw2d.event.DrawingObjectListener;
+import de.sofd.draw2d.event.PostChangeListener;
+import de.sofd.draw2d.viewer.DrawingViewer;
+
+/**
+ * Measures how many changes (color and location changes, each of which fires
+ * a pre-change and a post-change {@link DrawingObjectEvent}, or just the
+ * post-change event if no listener can reject it -- see
+ * {@link PostChangeListener}) per second a single {@link DrawingObject} can
+ * process: bare, with a few no-op listeners, as part of a {@link Drawing}
+ * with only post-change listeners, as part of a drawing shown in a
+ * {@link DrawingViewer} (without a backend), with additional listeners
+ * for structural changes only, and with reusable location change events (see
+ * {@link DrawingObject#setReusingLocationChangeEvents(boolean)}).
+ * <p>
+ * Usage: EventDispatchBenchmark [seconds per case, default 2]
+ *
+ * @author olaf
+ */
+public class EventDispatchBenchmark {
+
+    private static final DrawingObjectListener NOOP_LISTENER = new DrawingObjectListener() {
+        @Override
+        public void onDrawingObjectEvent(DrawingObjectEvent e) {
+        }
+    };
+
+    private static final DrawingListener NOOP_DRAWING_LISTENER = new DrawingListener() {
+        @Override
+        public void onDrawingEvent(EventObject e) {
+        }
+    };
+
+    private static class NoopPostChangeListener implements DrawingListener, PostChangeListener {
+        @Override
+        public void onDrawingEvent(EventObject e) {
+        }
+    }
+
+    private static void run(String name, DrawingObject drobj, long nanos) {
+        // warmup
+        fire(drobj, nanos / 4);
+        long t0 = System.nanoTime();
+        long changes = fire(drobj, nanos);
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        System.out.printf("%-32s %12.0f changes/s  (%.1f ns/change)%n",
+                          name, changes / seconds, seconds * 1e9 / changes);
+    }
+
+    private static long fire(DrawingObject drobj, long nanos) {
+        long end = System.nanoTime() + nanos;
+        long changes = 0;
+        Color[] colors = { Color.RED, Color.GREEN };
+        do {
+            for (int i = 0; i < 1000; i++) {
+                drobj.setColor(colors[i & 1]);
+                drobj.moveBy((i & 1) == 0 ? 1 : -1, 0);
+            }
+            changes += 2000;
+        } while (System.nanoTime() < end);
+        return changes;
+    }
+
+    public static void main(String[] args) {
+        long nanos = (long) ((args.length > 0 ? Double.parseDouble(args[0]) : 2) * 1e9);
+
+        RectangleObject bare = new RectangleObject(0, 0, 10, 10);
+        run("no listeners", bare, nanos);
+
+        RectangleObject withListeners = new RectangleObject(0, 0, 10, 10);
+        for (int i = 0; i < 3; i++) {
+            withListeners.addDrawingObjectListener(NOOP_LISTENER);
+        }
+        run("3 no-op listeners", withListeners, nanos);
+
+        List<DrawingObject> others = new ArrayList<DrawingObject>();
+        for (int i = 0; i < 1000; i++) {
+            others.add(new RectangleObject(i * 20, 0, i * 20 + 10, 10));
+        }
+        RectangleObject inDrawing = new RectangleObject(0, 20, 10, 30);
+        Drawing drawing = new Drawing();
+        drawing.addDrawingObjects(others);
+        drawing.addDrawingObject(inDrawing);
+        drawing.addDrawingListener(new NoopPostChangeListener());
+        run("in drawing (1000 objects), post", inDrawing, nanos);
+
+        drawing.addDrawingListener(NOOP_DRAWING_LISTENER);
+        run("in drawing, + veto-capable", inDrawing, nanos);
+
+        new DrawingViewer(drawing);
+        run("in drawing, with viewer", inDrawing, nanos);
+
+        // listeners only interested in structural changes (like list editors)
+        for (int i = 0; i < 5; i++) {
+            drawing.addDrawingListener(DrawingEvent.class, NOOP_DRAWING_LISTENER);
+        }
+        run("+ 5 DrawingEvent-only listeners", inDrawing, nanos);
+
+        inDrawing.setReusingLocationChangeEvents(true);
+        run("+ reusing location events", inDrawing, nanos);
+    }
+
+}
@@ -0,0 +1,114 @@
+package de.sofd.draw2d.viewer.test;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.sofd.draw2d.Drawing;
+import de.sofd.draw2d.DrawingObject;
+import de.sofd.draw2d.RectangleObject;
+
+/**
+ * Measures point hit-testing ({@link Drawing#getDrawingObjectsAt(Point2D)},
+ * which uses the drawing's spatial index) against a linear scan over all
+ * objects in z order calling {@link DrawingObject#contains(Point2D)} (what
+ * getDrawingObjectsAt did before the index existed), for drawings of 1k, 10k
+ * and 100k random 30x30 rectangles on a 10000x10000 area, at random points.
+ * Also checks that both return the same objects in the same order.
+ * <p>
+ * Usage: HitTestBenchmark [seconds per case, default 2]
+ *
+ * @author olaf
+ */
+public class HitTestBenchmark {
+
+    private static final double AREA_SIZE = 10000;
+    private static final double OBJECT_SIZE = 30;
+    private static final int POINT_COUNT = 4096;
+
+    // keeps the JIT from discarding the queries
+    private static int sink;
+
+    private static List<DrawingObject> linearHitTest(List<DrawingObject> objects, Point2D pt) {
+        List<DrawingObject> result = new ArrayList<DrawingObject>();
+        for (int i = objects.size() - 1; i >= 0; i--) {
+            DrawingObject drobj = objects.get(i);
+            if (drobj.contains(pt)) {
+                result.add(drobj);
+            }
+        }
+        return result;
+    }
+
+    private static long linear(List<DrawingObject> objects, Point2D[] points, long nanos) {
+        long end = System.nanoTime() + nanos;
+        long queries = 0;
+        int hits = 0;
+        do {
+            for (Point2D pt : points) {
+                hits += linearHitTest(objects, pt).size();
+            }
+            queries += points.length;
+        } while (System.nanoTime() < end);
+        sink += hits;
+        return queries;
+    }
+
+    private static long indexed(Drawing drawing, Point2D[] points, long nanos) {
+        long end = System.nanoTime() + nanos;
+        long queries = 0;
+        int hits = 0;
+        do {
+            for (Point2D pt : points) {
+                hits += drawing.getDrawingObjectsAt(pt).size();
+            }
+            queries += points.length;
+        } while (System.nanoTime() < end);
+        sink += hits;
+        return queries;
+    }
+
+    private static void report(String name, int n, long queries, long elapsedNanos) {
+        System.out.printf("%-8s %7d objects %12.2f us/query%n", name, n, elapsedNanos / 1e3 / queries);
+    }
+
+    public static void main(String[] args) {
+        long nanos = (long) ((args.length > 0 ? Double.parseDouble(args[0]) : 2) * 1e9);
+        Random random = new Random(42);
+
+        for (int n : new int[] { 1000, 10000, 100000 }) {
+            List<DrawingObject> objects = new ArrayList<DrawingObject>(n);
+            for (int i = 0; i < n; i++) {
+                double x = random.nextDouble() * (AREA_SIZE - OBJECT_SIZE);
+                double y = random.nextDouble() * (AREA_SIZE - OBJECT_SIZE);
+                objects.add(new RectangleObject(x, y, x + OBJECT_SIZE, y + OBJECT_SIZE));
+            }
+            Drawing drawing = new Drawing();
+            drawing.addDrawingObjects(objects);
+            Point2D[] points = new Point2D[POINT_COUNT];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = new Point2D.Double(random.nextDouble() * AREA_SIZE, random.nextDouble() * AREA_SIZE);
+            }
+
+            for (Point2D pt : points) {
+                if (!linearHitTest(objects, pt).equals(drawing.getDrawingObjectsAt(pt))) {
+                    throw new IllegalStateException("results differ at " + pt);
+                }
+            }
+
+            // warmup
+            linear(objects, points, nanos / 4);
+            indexed(drawing, points, nanos / 4);
+
+            long t0 = System.nanoTime();
+            long queries = linear(objects, points, nanos);
+            report("linear", n, queries, System.nanoTime() - t0);
+
+            t0 = System.nanoTime();
+            queries = indexed(drawing, points, nanos);
+            report("indexed", n, queries, System.nanoTime() - t0);
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+package de.sofd.draw2d.viewer.test;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+
+import de.sofd.draw2d.PolygonObject;
+
+/**
+ * Measures {@link PolygonObject#contains(Point2D)} (which uses an edge table
+ * for polygons with many points) against the plain ray-crossing loop over all
+ * edges that contains() used before, for polygons with few and many points,
+ * separately for points inside and outside the polygon (all within its
+ * bounding box, so the bounds check doesn't short-circuit). Also checks that
+ * both give the same results.
+ * <p>
+ * Polygons: freehand-like outlines (circles with radial noise) with 8 to 100k
+ * points, and a zigzag whose edges all span the full height (the edge table's
+ * worst case).
+ * <p>
+ * Usage: PolygonContainsBenchmark [seconds per case, default 2]
+ *
+ * @author olaf
+ */
+public class PolygonContainsBenchmark {
+
+    private static final int POINT_COUNT = 4096;
+
+    // keeps the JIT from discarding the queries
+    private static int sink;
+
+    /**
+     * The ray-crossing test as PolygonObject did it before the edge table.
+     */
+    private static boolean linearContains(double[] coords, int pointsCount, Rectangle2D bounds, Point2D pt) {
+        if (!bounds.contains(pt)) { return false; }
+        if (pointsCount < 2) { return false; }
+        double ptX = pt.getX(), ptY = pt.getY();
+        double prevX = coords[0], prevY = coords[1];
+        int nCrosses = 0;
+        for (int i = 1; i <= pointsCount; i++) {
+            int vi = (i==pointsCount ? 0 : 2*i);
+            double x = coords[vi], y = coords[vi + 1];
+            if ((prevY > ptY) == (y > ptY)) {
+                prevX = x;
+                prevY = y;
+                continue;
+            }
+            double crossX = prevX + (x-prevX)*(ptY-prevY)/(y-prevY);
+            if (crossX > ptX) {
+                nCrosses++;
+            }
+            prevX = x;
+            prevY = y;
+        }
+        return nCrosses%2 == 1;
+    }
+
+    private static PolygonObject newOutline(int n, Random random) {
+        double[] xy = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            double angle = 2 * Math.PI * i / n;
+            double radius = 1000 * (1 + 0.05 * (random.nextDouble() - 0.5));
+            xy[2 * i] = radius * Math.cos(angle);
+            xy[2 * i + 1] = radius * Math.sin(angle);
+        }
+        PolygonObject result = new PolygonObject();
+        result.appendPoints(xy, n);
+        return result;
+    }
+
+    private static PolygonObject newZigzag(int n) {
+        double[] xy = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            xy[2 * i] = i;
+            xy[2 * i + 1] = (i % 2 == 0 ? 0 : 1000);
+        }
+        PolygonObject result = new PolygonObject();
+        result.appendPoints(xy, n);
+        return result;
+    }
+
+    private static void run(String name, PolygonObject polygon, Random random, long nanos) {
+        double[] coords = polygon.copyPoints(null);
+        int pointsCount = polygon.getPointCount();
+        Rectangle2D bounds = polygon.getBounds2D();
+        // random points in the bounding box, sorted into inside / outside
+        Point2D[] inside = new Point2D[POINT_COUNT], outside = new Point2D[POINT_COUNT];
+        int nInside = 0, nOutside = 0;
+        while (nInside < POINT_COUNT || nOutside < POINT_COUNT) {
+            Point2D pt = new Point2D.Double(bounds.getX() + random.nextDouble() * bounds.getWidth(),
+                                            bounds.getY() + random.nextDouble() * bounds.getHeight());
+            boolean expected = linearContains(coords, pointsCount, bounds, pt);
+            if (expected != polygon.contains(pt)) {
+                throw new IllegalStateException(name + ": results differ at " + pt);
+            }
+            if (expected && nInside < POINT_COUNT) {
+                inside[nInside++] = pt;
+            } else if (!expected && nOutside < POINT_COUNT) {
+                outside[nOutside++] = pt;
+            }
+        }
+
+        for (int k = 0; k < 2; k++) {
+            Point2D[] points = (k == 0 ? inside : outside);
+            // warmup
+            linear(coords, pointsCount, bounds, points, nanos / 4);
+            polygon(polygon, points, nanos / 4);
+
+            long t0 = System.nanoTime();
+            long queries = linear(coords, pointsCount, bounds, points, nanos);
+            double linearNs = (System.nanoTime() - t0) / (double) queries;
+            t0 = System.nanoTime();
+            queries = polygon(polygon, points, nanos);
+            double polygonNs = (System.nanoTime() - t0) / (double) queries;
+            System.out.printf("%-10s %7d points, %-7s  linear %12.1f ns  contains() %12.1f ns%n",
+                              name, pointsCount, (k == 0 ? "inside" : "outside"), linearNs, polygonNs);
+        }
+    }
+
+    private static long linear(double[] coords, int pointsCount, Rectangle2D bounds, Point2D[] points, long nanos) {
+        long end = System.nanoTime() + nanos;
+        long queries = 0;
+        int hits = 0;
+        do {
+            for (Point2D pt : points) {
+                if (linearContains(coords, pointsCount, bounds, pt)) {
+                    hits++;
+                }
+            }
+            queries += points.length;
+        } while (System.nanoTime() < end);
+        sink += hits;
+        return queries;
+    }
+
+    private static long polygon(PolygonObject polygon, Point2D[] points, long nanos) {
+        long end = System.nanoTime() + nanos;
+        long queries = 0;
+        int hits = 0;
+        do {
+            for (Point2D pt : points) {
+                if (polygon.contains(pt)) {
+                    hits++;
+                }
+            }
+            queries += points.length;
+        } while (System.nanoTime() < end);
+        sink += hits;
+        return queries;
+    }
+
+    public static void main(String[] args) {
+        long nanos = (long) ((args.length > 0 ? Double.parseDouble(args[0]) : 2) * 1e9);
+        Random random = new Random(42);
+
+        for (int n : new int[] { 8, 32, 1000, 10000, 100000 }) {
+            run("outline", newOutline(n, random), random, nanos);
+        }
+        run("zigzag", newZigzag(10000), random, nanos);
+    }
+
+}
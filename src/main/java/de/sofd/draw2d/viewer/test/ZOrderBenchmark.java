@@ -0,0 +1,138 @@
+package de.sofd.draw2d.viewer.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import de.sofd.draw2d.Drawing;
+import de.sofd.draw2d.DrawingObject;
+import de.sofd.draw2d.RectangleObject;
+
+/**
+ * Measures bulk changes of a {@link Drawing}'s z order list for 1k, 10k and
+ * 100k objects: adding the objects one by one, moving each to a random
+ * position, replacing all of them with {@link Drawing#setObjects(List)}, and
+ * removing them one by one in random order. For comparison, the same list
+ * operations are run on an ArrayList the way Drawing used to store its
+ * objects (an indexOf() before each add, move and remove), i.e. the storage
+ * alone, without events or spatial index.
+ * <p>
+ * Each operation is run a few times; the best time is printed.
+ * <p>
+ * Usage: ZOrderBenchmark [max. number of objects for the ArrayList
+ * comparison, default 100000]
+ *
+ * @author olaf
+ */
+public class ZOrderBenchmark {
+
+    private static final int RUNS = 3;
+
+    private interface Op {
+        void run(List<DrawingObject> objects, List<DrawingObject> shuffled, int[] positions);
+    }
+
+    private static final Op DRAWING_ADD_REMOVE = new Op() {
+        @Override
+        public void run(List<DrawingObject> objects, List<DrawingObject> shuffled, int[] positions) {
+            Drawing drawing = new Drawing();
+            long t0 = System.nanoTime();
+            for (DrawingObject o : objects) {
+                drawing.addDrawingObject(o);
+            }
+            long t1 = System.nanoTime();
+            for (int i = 0; i < positions.length; i++) {
+                drawing.addDrawingObject(positions[i], shuffled.get(i));
+            }
+            long t2 = System.nanoTime();
+            drawing.setObjects(objects);
+            long t3 = System.nanoTime();
+            for (DrawingObject o : shuffled) {
+                drawing.removeDrawingObject(o);
+            }
+            long t4 = System.nanoTime();
+            record(t1 - t0, t2 - t1, t3 - t2, t4 - t3);
+        }
+    };
+
+    private static final Op ARRAYLIST_ADD_REMOVE = new Op() {
+        @Override
+        public void run(List<DrawingObject> objects, List<DrawingObject> shuffled, int[] positions) {
+            List<DrawingObject> list = new ArrayList<DrawingObject>();
+            long t0 = System.nanoTime();
+            for (DrawingObject o : objects) {
+                if (list.indexOf(o) < 0) {
+                    list.add(o);
+                }
+            }
+            long t1 = System.nanoTime();
+            for (int i = 0; i < positions.length; i++) {
+                DrawingObject o = shuffled.get(i);
+                list.remove(list.indexOf(o));
+                list.add(positions[i], o);
+            }
+            long t2 = System.nanoTime();
+            // setObjects() removed the objects from the front, then added the new ones one by one
+            while (!list.isEmpty()) {
+                list.remove(0);
+            }
+            for (DrawingObject o : objects) {
+                if (list.indexOf(o) < 0) {
+                    list.add(o);
+                }
+            }
+            long t3 = System.nanoTime();
+            for (DrawingObject o : shuffled) {
+                list.remove(list.indexOf(o));
+            }
+            long t4 = System.nanoTime();
+            record(t1 - t0, t2 - t1, t3 - t2, t4 - t3);
+        }
+    };
+
+    // best times of the current case: add, move, setObjects, remove
+    private static final long[] best = new long[4];
+
+    private static void record(long... times) {
+        for (int i = 0; i < best.length; i++) {
+            best[i] = Math.min(best[i], times[i]);
+        }
+    }
+
+    private static void run(String name, Op op, List<DrawingObject> objects, List<DrawingObject> shuffled,
+                            int[] positions) {
+        for (int i = 0; i < best.length; i++) {
+            best[i] = Long.MAX_VALUE;
+        }
+        for (int i = 0; i < RUNS; i++) {
+            op.run(objects, shuffled, positions);
+        }
+        System.out.printf("%-10s %7d objects  add %9.1f ms  move %9.1f ms  setObjects %9.1f ms  remove %9.1f ms%n",
+                          name, objects.size(), best[0] / 1e6, best[1] / 1e6, best[2] / 1e6, best[3] / 1e6);
+    }
+
+    public static void main(String[] args) {
+        int maxArrayListSize = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        Random random = new Random(42);
+
+        for (int n : new int[] { 1000, 10000, 100000 }) {
+            List<DrawingObject> objects = new ArrayList<DrawingObject>(n);
+            for (int i = 0; i < n; i++) {
+                objects.add(new RectangleObject(i, i, i + 10, i + 10));
+            }
+            List<DrawingObject> shuffled = new ArrayList<DrawingObject>(objects);
+            Collections.shuffle(shuffled, random);
+            int[] positions = new int[n];
+            for (int i = 0; i < n; i++) {
+                positions[i] = random.nextInt(n);
+            }
+
+            run("Drawing", DRAWING_ADD_REMOVE, objects, shuffled, positions);
+            if (n <= maxArrayListSize) {
+                run("ArrayList", ARRAYLIST_ADD_REMOVE, objects, shuffled, positions);
+            }
+        }
+    }
+
+}
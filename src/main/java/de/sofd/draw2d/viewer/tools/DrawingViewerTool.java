@@ -4,8 +4,12 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 
+import java.util.Collection;
+import java.util.Collections;
+
 import javax.swing.event.MouseInputListener;
 
+import de.sofd.draw2d.DrawingObject;
 import de.sofd.draw2d.viewer.DrawingViewer;
 
 /**
@@ -111,6 +115,21 @@ public abstract class DrawingViewerTool implements MouseInputListener, MouseWhee
         return this.associatedViewer;
     }
 
+    /**
+     * Objects of the drawing that this tool is currently creating or otherwise
+     * changing continuously (e.g. the polygon being drawn), if any. A viewer
+     * with a cached {@link DrawingViewer.RenderingMode} paints these on top of
+     * its cached base layer, like the selected objects, so their frequent
+     * changes don't force the base layer to be re-rendered.
+     * <p>
+     * DrawingViewerTool's implementation returns an empty collection.
+     * 
+     * @return the objects. Must not be modified by the caller.
+     */
+    public Collection<DrawingObject> getObjectsInProgress() {
+        return Collections.emptyList();
+    }
+
     /*
      * TODO: the following methods should better be protected because, just like #associateWithViewer() etc.,
      * they shouldn't be called from the outside.
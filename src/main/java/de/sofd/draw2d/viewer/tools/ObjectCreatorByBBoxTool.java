@@ -2,6 +2,8 @@ package de.sofd.draw2d.viewer.tools;
 
 import java.awt.event.MouseEvent;
 import java.awt.geom.Point2D;
+import java.util.Collection;
+import java.util.Collections;
 
 import de.sofd.draw2d.DrawingObject;
 import de.sofd.draw2d.viewer.DrawingViewer;
@@ -36,6 +38,14 @@ public abstract class ObjectCreatorByBBoxTool extends DrawingViewerTool {
      */
     private Point2D pt0;  // we create pt0 of the object's location and drag pt2
     
+    @Override
+    public Collection<DrawingObject> getObjectsInProgress() {
+        if (null == currentObject) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(currentObject);
+    }
+
     @Override
     public void associateWithViewer(DrawingViewer viewer) {
         if (currentObject != null) {  // should never happen, but just to be sure...
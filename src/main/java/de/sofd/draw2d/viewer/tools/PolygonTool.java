@@ -3,7 +3,10 @@ package de.sofd.draw2d.viewer.tools;
 import java.awt.Color;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Point2D;
+import java.util.Collection;
+import java.util.Collections;
 
+import de.sofd.draw2d.DrawingObject;
 import de.sofd.draw2d.PolygonObject;
 import de.sofd.draw2d.viewer.DrawingViewer;
 
@@ -43,6 +46,14 @@ public class PolygonTool extends DrawingViewerTool {
         super.disassociateFromViewer();
     }
 
+    @Override
+    public Collection<DrawingObject> getObjectsInProgress() {
+        if (null == currentPolygon) {
+            return Collections.emptyList();
+        }
+        return Collections.<DrawingObject>singletonList(currentPolygon);
+    }
+
     protected PolygonObject createNewPolygon() {
         PolygonObject result = new PolygonObject();
         result.setColor(Color.RED);
@@ -5,6 +5,7 @@ import java.awt.event.InputEvent;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Point2D;
 
+import de.sofd.draw2d.Drawing;
 import de.sofd.draw2d.DrawingObject;
 import de.sofd.draw2d.viewer.DrawingViewer;
 import de.sofd.draw2d.viewer.adapters.MouseHandle;
@@ -36,7 +37,7 @@ public class SelectorTool extends DrawingViewerTool {
             Point ptInDisplayCoords = e.getPoint();
             Point2D ptInObjCoords = getAssociatedViewer().displayToObj(ptInDisplayCoords);
             
-            for (DrawingObject drobj : getAssociatedViewer().getSelection()) {
+            for (DrawingObject drobj : getAssociatedViewer().getSelectionView()) {
                 MouseHandle handle = getAssociatedViewer().getDrawingAdapterFor(drobj).getHandleAt(ptInDisplayCoords);
                 if (null != handle) {
                     draggedHandle = handle;
@@ -48,7 +49,7 @@ public class SelectorTool extends DrawingViewerTool {
             
             DrawingObject clickedObj = getAssociatedViewer().getTopmostDrawingObjectAtDispCoord(ptInDisplayCoords);
             if (null == clickedObj) {
-                if (!getAssociatedViewer().getSelection().isEmpty()) {
+                if (!getAssociatedViewer().getSelectionView().isEmpty()) {
                     getAssociatedViewer().clearSelection();
                     e.consume();
                 }
@@ -83,8 +84,14 @@ public class SelectorTool extends DrawingViewerTool {
         case SELECTION_DRAGGING:
             double dx = ptInObjCoords.getX() - latestSelectionDragPt.getX();
             double dy = ptInObjCoords.getY() - latestSelectionDragPt.getY();
-            for (DrawingObject drobj : getAssociatedViewer().getSelection()) {
-                drobj.moveBy(dx, dy);
+            Drawing drawing = getAssociatedViewer().getDrawing();
+            drawing.beginBatch();
+            try {
+                for (DrawingObject drobj : getAssociatedViewer().getSelection()) {
+                    drobj.moveBy(dx, dy);
+                }
+            } finally {
+                drawing.endBatch();
             }
             latestSelectionDragPt = ptInObjCoords;
             e.consume();